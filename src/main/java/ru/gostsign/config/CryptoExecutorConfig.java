@@ -0,0 +1,59 @@
+package ru.gostsign.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул потоков для криптографических операций (хэширование и подпись).
+ * Операции упираются в процессор, поэтому потоков не больше, чем ядер.
+ */
+@Configuration
+public class CryptoExecutorConfig {
+
+    // 0 - по числу доступных ядер
+    @Value("${gostsign.crypto.threads:0}")
+    private int threads;
+    // 0 - по числу доступных ядер
+    @Value("${gostsign.cpu.threads:0}")
+    private int cpuThreads;
+
+    @Bean(name = "cryptoExecutor", destroyMethod = "shutdown")
+    public ExecutorService cryptoExecutor() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "gost-crypto-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        System.out.println("Пул криптографических операций: " + poolSize + " потоков");
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    /**
+     * Пул обычных потоков для тяжелых по процессору обработчиков запросов (штамп, подпись, проверка),
+     * когда запросы обслуживаются виртуальными потоками (профиль java21).
+     * Отдельный от cryptoExecutor: операции в нем сами отправляют задачи в cryptoExecutor и ждут их
+     */
+    @Bean(name = "cpuExecutor", destroyMethod = "shutdown")
+    public ExecutorService cpuExecutor() {
+        int poolSize = cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "gost-cpu-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+    }
+}
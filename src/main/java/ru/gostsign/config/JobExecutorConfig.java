@@ -0,0 +1,40 @@
+package ru.gostsign.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул потоков асинхронных заданий (штамп и подпись крупных документов).
+ * Очередь ограничена: при переполнении новое задание отклоняется, а не копится в памяти.
+ */
+@Configuration
+public class JobExecutorConfig {
+
+    // 0 - половина доступных ядер, но не меньше одного потока
+    @Value("${gostsign.jobs.threads:0}")
+    private int threads;
+    @Value("${gostsign.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Bean(name = "jobExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService jobExecutor() {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "gost-job-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        System.out.println("Пул асинхронных заданий: " + poolSize + " потоков, очередь " + queueCapacity);
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)), threadFactory);
+    }
+}
@@ -0,0 +1,21 @@
+package ru.gostsign.config;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Настройки встроенного Tomcat.
+ * Ответ "100 Continue" отправляется только при чтении тела: клиент с "Expect: 100-continue",
+ * которому AdmissionFilter отказал (429), не начинает передавать документ
+ */
+@Configuration
+public class TomcatConfig {
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> continueOnReadCustomizer() {
+        return factory -> factory.addConnectorCustomizers(
+                connector -> connector.setProperty("continueResponseTiming", "onRead"));
+    }
+}
@@ -0,0 +1,100 @@
+package ru.gostsign.controller;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.gostsign.service.AdmissionControl;
+import ru.gostsign.service.AdmissionRejectedException;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Допуск запросов с документами до чтения тела: полоса выбирается по Content-Length,
+ * при нехватке места клиент получает 429 с Retry-After, не передав документ.
+ * Допуск кладется в атрибут запроса, обработчик уточняет его после приема документа.
+ * Пакетные операции и асинхронные задания ограничиваются своими пулами и сюда не входят
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+    private static final Set<String> DOCUMENT_PATHS = Set.of(
+            "/api/sign-document",
+            "/api/sign-document-with-signature",
+            "/api/sign-document-embedded",
+            "/api/add-stamp",
+            "/api/verify");
+
+    @Autowired
+    private AdmissionControl admissionControl;
+    @Value("${gostsign.admission.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod())
+                || !DOCUMENT_PATHS.contains(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AdmissionControl.Lease lease;
+        try {
+            lease = admissionControl.admit(request.getContentLengthLong());
+        } catch (AdmissionRejectedException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getReason());
+            return;
+        }
+        request.setAttribute(AdmissionControl.LEASE_ATTRIBUTE, lease);
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                // Потоковый ответ: документ обрабатывается после выхода из фильтра
+                request.getAsyncContext().addListener(new ReleaseListener(lease));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                lease.release();
+            }
+        }
+    }
+
+    private static final class ReleaseListener implements AsyncListener {
+        private final AdmissionControl.Lease lease;
+
+        ReleaseListener(AdmissionControl.Lease lease) {
+            this.lease = lease;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            lease.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            lease.release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            lease.release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.gostsign.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.gostsign.model.AdmissionMetrics;
+import ru.gostsign.model.CacheMetrics;
+import ru.gostsign.model.CryptoEngineBenchmark;
+import ru.gostsign.model.KeyPoolMetrics;
+import ru.gostsign.service.AdmissionControl;
+import ru.gostsign.service.CertificateCache;
+import ru.gostsign.service.CryptoEngineService;
+import ru.gostsign.service.GostKeyPairPool;
+import ru.gostsign.service.GostNoncePool;
+import ru.gostsign.service.VerificationResultCache;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/metrics")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class MetricsController {
+    private final CertificateCache certificateCache;
+    private final VerificationResultCache verificationResultCache;
+    private final GostKeyPairPool keyPairPool;
+    private final GostNoncePool noncePool;
+    private final CryptoEngineService cryptoEngineService;
+    private final AdmissionControl admissionControl;
+
+    /**
+     * Статистика кэшей: размер, попадания, промахи, вытеснения
+     */
+    @GetMapping(value = "/caches")
+    public ResponseEntity<List<CacheMetrics>> getCacheMetrics() {
+        return ResponseEntity.ok(List.of(certificateCache.getMetrics(), verificationResultCache.getMetrics()));
+    }
+
+    /**
+     * Пул ключевых пар: глубина, попадания, промахи, скорость пополнения
+     */
+    @GetMapping(value = "/key-pool")
+    public ResponseEntity<List<KeyPoolMetrics>> getKeyPoolMetrics() {
+        return ResponseEntity.ok(keyPairPool.getMetrics());
+    }
+
+    /**
+     * Пул заранее вычисленных пар (k, r) для подписи: глубина, попадания, промахи, скорость пополнения
+     */
+    @GetMapping(value = "/nonce-pool")
+    public ResponseEntity<List<KeyPoolMetrics>> getNoncePoolMetrics() {
+        return ResponseEntity.ok(noncePool.getMetrics());
+    }
+
+    /**
+     * Криптографические бэкенды: результаты замера при старте и выбранный бэкенд
+     */
+    @GetMapping(value = "/crypto-engine")
+    public ResponseEntity<List<CryptoEngineBenchmark>> getCryptoEngineMetrics() {
+        return ResponseEntity.ok(cryptoEngineService.getBenchmarks());
+    }
+
+    /**
+     * Пулы криптографических объектов (хэши, Signature, KeyFactory, CertificateFactory, буферы):
+     * попадания - повторные выдачи, промахи - созданные объекты
+     */
+    @GetMapping(value = "/crypto-contexts")
+    public ResponseEntity<List<CacheMetrics>> getCryptoContextMetrics() {
+        return ResponseEntity.ok(cryptoEngineService.getContextMetrics());
+    }
+
+    /**
+     * Полосы допуска документов: пределы, запросы в обработке, отказы, резерв памяти
+     */
+    @GetMapping(value = "/admission")
+    public ResponseEntity<List<AdmissionMetrics>> getAdmissionMetrics() {
+        return ResponseEntity.ok(admissionControl.getMetrics());
+    }
+}
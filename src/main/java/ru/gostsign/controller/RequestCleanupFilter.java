@@ -0,0 +1,100 @@
+package ru.gostsign.controller;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Закрывает ресурсы запроса (принятые документы во временных файлах) после его завершения.
+ * Для потокового ответа - по завершении асинхронной обработки, в том числе по таймауту или ошибке,
+ * даже если тело ответа так и не начало писаться (клиент отключился до запуска)
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestCleanupFilter extends OncePerRequestFilter {
+    private static final String RESOURCES_ATTRIBUTE = RequestCleanupFilter.class.getName() + ".resources";
+
+    /**
+     * Регистрирует ресурс для закрытия после завершения запроса; повторное закрытие ресурс должен допускать
+     */
+    static void closeAfterRequest(HttpServletRequest request, AutoCloseable resource) {
+        @SuppressWarnings("unchecked")
+        List<AutoCloseable> resources = (List<AutoCloseable>) request.getAttribute(RESOURCES_ATTRIBUTE);
+        if (resources == null) {
+            resources = new ArrayList<>();
+            request.setAttribute(RESOURCES_ATTRIBUTE, resources);
+        }
+        resources.add(resource);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CleanupListener(request));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                closeAll(request);
+            }
+        }
+    }
+
+    private static void closeAll(HttpServletRequest request) {
+        @SuppressWarnings("unchecked")
+        List<AutoCloseable> resources = (List<AutoCloseable>) request.getAttribute(RESOURCES_ATTRIBUTE);
+        if (resources == null) {
+            return;
+        }
+        request.removeAttribute(RESOURCES_ATTRIBUTE);
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                System.err.println("Ошибка освобождения ресурса запроса: " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class CleanupListener implements AsyncListener {
+        private final HttpServletRequest request;
+
+        CleanupListener(HttpServletRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            closeAll(request);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            closeAll(request);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            closeAll(request);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -1,17 +1,44 @@
 package ru.gostsign.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.gostsign.model.SignRequest;
+import ru.gostsign.model.DigestSignRequest;
+import ru.gostsign.model.DigestSignResponse;
+import ru.gostsign.model.DigestVerificationRequest;
+import ru.gostsign.model.DigestVerificationResult;
+import ru.gostsign.model.KeyImportRequest;
+import ru.gostsign.model.KeyImportResponse;
 import ru.gostsign.model.DocumentSignRequest;
+import ru.gostsign.model.JobStatus;
 import ru.gostsign.model.VerificationRequest;
 import ru.gostsign.model.VerificationResult;
+import ru.gostsign.service.AdmissionControl;
+import ru.gostsign.service.BatchSignService;
+import ru.gostsign.service.BatchVerifyService;
+import ru.gostsign.service.CpuBoundExecutor;
+import ru.gostsign.service.DocumentSpooler;
 import ru.gostsign.service.GostSignatureService;
+import ru.gostsign.service.JobService;
+import ru.gostsign.service.KeyRegistry;
+import ru.gostsign.service.SpooledDocument;
 import ru.gostsign.service.TestPdfGenerator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
@@ -19,49 +46,229 @@ import ru.gostsign.service.TestPdfGenerator;
 public class SignController {
     private final GostSignatureService gostSignatureService;
     private final TestPdfGenerator testPdfGenerator;
+    private final DocumentSpooler documentSpooler;
+    private final BatchSignService batchSignService;
+    private final KeyRegistry keyRegistry;
+    private final BatchVerifyService batchVerifyService;
+    private final JobService jobService;
+    private final CpuBoundExecutor cpuBoundExecutor;
 
     /**
      * 1. Создание подписи - генерирует ключевую пару и сертификат
      */
     @PostMapping(value = "/sign", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<byte[]> createSignature(@RequestBody SignRequest request) {
-        byte[] zipBytes = gostSignatureService.createSignature(request);
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signature.zip")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(zipBytes);
+    public ResponseEntity<StreamingResponseBody> createSignature(@RequestBody SignRequest request) {
+        return zipAttachment("signature.zip", output -> gostSignatureService.createSignature(request, output));
     }
 
     /**
      * 2. Подписание документа
      */
     @PostMapping(value = "/sign-document", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<byte[]> signDocument(@RequestBody DocumentSignRequest request) {
-        byte[] signedDocument = gostSignatureService.signDocument(request);
+    public ResponseEntity<byte[]> signDocument(@RequestBody DocumentSignRequest request,
+                                               @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease) {
+        SpooledDocument document = SpooledDocument.of(request.getDocumentBytes());
+        admitDocument(lease, document);
+        byte[] signedDocument = cpuBoundExecutor.call(() -> gostSignatureService.signDocument(request, document));
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signed_document.pdf")
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
                 .body(signedDocument);
     }
 
+    /**
+     * 2. Подписание документа, переданного файлом (часть "document", поля штампа - параметрами формы)
+     */
+    @PostMapping(value = "/sign-document", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<byte[]> signDocument(@RequestPart("document") MultipartFile file,
+                                               @ModelAttribute DocumentSignRequest request,
+                                               @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease) {
+        try (SpooledDocument document = documentSpooler.spool(file)) {
+            admitDocument(lease, document);
+            byte[] signedDocument = cpuBoundExecutor.call(() -> gostSignatureService.signDocument(request, document));
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signed_document.pdf")
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(signedDocument);
+        }
+    }
+
+    /**
+     * 2. Подписание документа, переданного телом запроса.
+     * Ключ (X-Key-Handle или X-Private-Key) и сертификат (X-Certificate) - в заголовках, поля штампа - в параметрах запроса
+     */
+    @PostMapping(value = "/sign-document", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> signDocument(@ModelAttribute DocumentSignRequest request,
+                                               @RequestHeader(value = "X-Key-Handle", required = false) String keyHandle,
+                                               @RequestHeader(value = "X-Private-Key", required = false) String privateKey,
+                                               @RequestHeader(value = "X-Certificate", required = false) String certificate,
+                                               @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease,
+                                               HttpServletRequest httpRequest) {
+        applyKeyHeaders(request, keyHandle, privateKey, certificate);
+        try (SpooledDocument document = spoolBody(httpRequest)) {
+            admitDocument(lease, document);
+            byte[] signedDocument = cpuBoundExecutor.call(() -> gostSignatureService.signDocument(request, document));
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signed_document.pdf")
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(signedDocument);
+        }
+    }
+
+    /**
+     * 2d. Подписание заранее вычисленных хэшей ГОСТ Р 34.11-2012 (документ не передается)
+     */
+    @PostMapping(value = "/sign-digest", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DigestSignResponse> signDigest(@RequestBody DigestSignRequest request) {
+        return ResponseEntity.ok(cpuBoundExecutor.call(() -> gostSignatureService.signDigests(request)));
+    }
+
+    /**
+     * 2e. Пакетное подписание: тело запроса - ZIP-архив документов, ключ - в заголовке X-Key-Handle или X-Private-Key.
+     * Результат (format=zip - архив файлов .sig, format=ndjson - строка JSON на документ) отдается потоком
+     */
+    @PostMapping(value = "/sign-batch", consumes = {"application/zip", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<StreamingResponseBody> signBatch(@RequestHeader(value = "X-Key-Handle", required = false) String keyHandle,
+                                                           @RequestHeader(value = "X-Private-Key", required = false) String privateKey,
+                                                           @RequestParam(value = "format", defaultValue = "zip") String format,
+                                                           HttpServletRequest httpRequest) {
+        // Ключ проверяется до начала ответа, чтобы ошибка вернулась обычным статусом
+        ECKeyParameters key = keyRegistry.resolveKeyParameters(keyHandle, privateKey);
+        BatchSignService.Format batchFormat = "ndjson".equalsIgnoreCase(format)
+                ? BatchSignService.Format.NDJSON : BatchSignService.Format.ZIP;
+        StreamingResponseBody body = output -> {
+            try (InputStream archive = httpRequest.getInputStream()) {
+                batchSignService.signArchive(key, archive, output, batchFormat);
+            }
+        };
+        if (batchFormat == BatchSignService.Format.NDJSON) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(body);
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signatures.zip")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
     /**
      * 2a. Подписание документа с возвратом подписи отдельно
      */
     @PostMapping(value = "/sign-document-with-signature", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<byte[]> signDocumentWithSignature(@RequestBody DocumentSignRequest request) {
-        byte[] result = gostSignatureService.signDocumentWithSignature(request);
+    public ResponseEntity<StreamingResponseBody> signDocumentWithSignature(@RequestBody DocumentSignRequest request,
+                                                                           @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease) {
+        SpooledDocument document = SpooledDocument.of(request.getDocumentBytes());
+        admitDocument(lease, document);
+        return zipAttachment("signed_document_with_signature.zip",
+                output -> gostSignatureService.signDocumentWithSignature(request, document, output));
+    }
+
+    /**
+     * 2a. Подписание документа, переданного файлом, с возвратом подписи отдельно
+     */
+    @PostMapping(value = "/sign-document-with-signature", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> signDocumentWithSignature(@RequestPart("document") MultipartFile file,
+                                                                           @ModelAttribute DocumentSignRequest request,
+                                                                           @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease,
+                                                                           HttpServletRequest httpRequest) {
+        SpooledDocument document = documentSpooler.spool(file);
+        RequestCleanupFilter.closeAfterRequest(httpRequest, document);
+        admitDocument(lease, document);
+        return zipAttachment("signed_document_with_signature.zip", output -> {
+            try (document) {
+                gostSignatureService.signDocumentWithSignature(request, document, output);
+            }
+        });
+    }
+
+    /**
+     * 2a. Подписание документа, переданного телом запроса, с возвратом подписи отдельно
+     */
+    @PostMapping(value = "/sign-document-with-signature", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> signDocumentWithSignature(@ModelAttribute DocumentSignRequest request,
+                                                                           @RequestHeader(value = "X-Key-Handle", required = false) String keyHandle,
+                                                                           @RequestHeader(value = "X-Private-Key", required = false) String privateKey,
+                                                                           @RequestHeader(value = "X-Certificate", required = false) String certificate,
+                                                                           @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease,
+                                                                           HttpServletRequest httpRequest) {
+        applyKeyHeaders(request, keyHandle, privateKey, certificate);
+        // Тело запроса читается до начала ответа; временный файл удаляется после записи архива,
+        // а если запись не началась (таймаут, обрыв соединения) - по завершении запроса
+        SpooledDocument document = spoolBody(httpRequest);
+        RequestCleanupFilter.closeAfterRequest(httpRequest, document);
+        admitDocument(lease, document);
+        return zipAttachment("signed_document_with_signature.zip", output -> {
+            try (document) {
+                gostSignatureService.signDocumentWithSignature(request, document, output);
+            }
+        });
+    }
+
+    /**
+     * 2c. Подписание PDF встроенной ГОСТ-подписью (CMS)
+     */
+    @PostMapping(value = "/sign-document-embedded", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> signDocumentEmbedded(@RequestBody DocumentSignRequest request,
+                                                       @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease) {
+        SpooledDocument document = SpooledDocument.of(request.getDocumentBytes());
+        admitDocument(lease, document);
+        byte[] signedPdf = cpuBoundExecutor.call(() -> gostSignatureService.signDocumentEmbedded(request, document));
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signed_document_with_signature.zip")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(result);
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signed_document.pdf")
+                .contentType(MediaType.APPLICATION_PDF)
+                .body(signedPdf);
+    }
+
+    /**
+     * 2c. Встроенная подпись PDF, переданного файлом: крупный документ разбирается из временного файла,
+     * подписанный PDF пишется прямо в поток ответа
+     */
+    @PostMapping(value = "/sign-document-embedded", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> signDocumentEmbedded(@RequestPart("document") MultipartFile file,
+                                                                      @ModelAttribute DocumentSignRequest request,
+                                                                      @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease,
+                                                                      HttpServletRequest httpRequest) {
+        SpooledDocument document = documentSpooler.spool(file);
+        RequestCleanupFilter.closeAfterRequest(httpRequest, document);
+        admitDocument(lease, document);
+        return pdfAttachment("signed_document.pdf", output -> {
+            try (document) {
+                gostSignatureService.signDocumentEmbedded(request, document, output);
+            }
+        });
+    }
+
+    /**
+     * 2c. Встроенная подпись PDF, переданного телом запроса. Ключ и сертификат - в заголовках
+     */
+    @PostMapping(value = "/sign-document-embedded", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> signDocumentEmbedded(@ModelAttribute DocumentSignRequest request,
+                                                                      @RequestHeader(value = "X-Key-Handle", required = false) String keyHandle,
+                                                                      @RequestHeader(value = "X-Private-Key", required = false) String privateKey,
+                                                                      @RequestHeader(value = "X-Certificate", required = false) String certificate,
+                                                                      @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease,
+                                                                      HttpServletRequest httpRequest) {
+        applyKeyHeaders(request, keyHandle, privateKey, certificate);
+        SpooledDocument document = spoolBody(httpRequest);
+        RequestCleanupFilter.closeAfterRequest(httpRequest, document);
+        admitDocument(lease, document);
+        return pdfAttachment("signed_document.pdf", output -> {
+            try (document) {
+                gostSignatureService.signDocumentEmbedded(request, document, output);
+            }
+        });
     }
 
     /**
      * 2b. Добавление штампа к документу (без подписи)
      */
     @PostMapping(value = "/add-stamp", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<byte[]> addStampToDocument(@RequestBody DocumentSignRequest request) {
-        byte[] result = gostSignatureService.addStampToDocument(request);
+    public ResponseEntity<byte[]> addStampToDocument(@RequestBody DocumentSignRequest request,
+                                                     @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease) {
+        SpooledDocument document = SpooledDocument.of(request.getDocumentBytes());
+        admitDocument(lease, document);
+        byte[] result = cpuBoundExecutor.call(() -> gostSignatureService.addStampToDocument(request, document));
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=document_with_stamp.pdf")
                 .contentType(MediaType.APPLICATION_PDF)
@@ -69,29 +276,192 @@ public class SignController {
     }
 
     /**
-     * 1a. Получение последнего сгенерированного приватного ключа
+     * 2b. Добавление штампа к PDF, переданному файлом
+     */
+    @PostMapping(value = "/add-stamp", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<byte[]> addStampToDocument(@RequestPart("document") MultipartFile file,
+                                                     @ModelAttribute DocumentSignRequest request,
+                                                     @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease) {
+        try (SpooledDocument document = documentSpooler.spool(file)) {
+            admitDocument(lease, document);
+            byte[] result = cpuBoundExecutor.call(() -> gostSignatureService.addStampToDocument(request, document));
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=document_with_stamp.pdf")
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .body(result);
+        }
+    }
+
+    /**
+     * 2b. Добавление штампа к PDF, переданному телом запроса (поля штампа - в параметрах запроса)
      */
-    @GetMapping(value = "/last-private-key")
-    public ResponseEntity<String> getLastPrivateKey() {
-        String privateKey = gostSignatureService.getLastPrivateKeyBase64();
-        if (privateKey != null) {
+    @PostMapping(value = "/add-stamp", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> addStampToDocument(@ModelAttribute DocumentSignRequest request,
+                                                     @RequestAttribute(name = AdmissionControl.LEASE_ATTRIBUTE, required = false) AdmissionControl.Lease lease,
+                                                     HttpServletRequest httpRequest) {
+        try (SpooledDocument document = spoolBody(httpRequest)) {
+            admitDocument(lease, document);
+            byte[] result = cpuBoundExecutor.call(() -> gostSignatureService.addStampToDocument(request, document));
             return ResponseEntity.ok()
-                    .contentType(MediaType.TEXT_PLAIN)
-                    .body(privateKey);
-        } else {
-            return ResponseEntity.notFound().build();
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=document_with_stamp.pdf")
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .body(result);
         }
     }
 
+    /**
+     * 1a. Импорт приватного ключа: возвращает дескриптор для поля keyHandle (заголовка X-Key-Handle)
+     */
+    @PostMapping(value = "/keys", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<KeyImportResponse> importKey(@RequestBody KeyImportRequest request) {
+        return ResponseEntity.ok(gostSignatureService.importKey(request));
+    }
+
+    /**
+     * 1b. Удаление ключа из реестра
+     */
+    @DeleteMapping(value = "/keys/{keyHandle}")
+    public ResponseEntity<Void> removeKey(@PathVariable("keyHandle") String keyHandle) {
+        gostSignatureService.removeKey(keyHandle);
+        return ResponseEntity.noContent().build();
+    }
+
     /**
      * 3. Проверка подписи
      */
     @PostMapping(value = "/verify", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<VerificationResult> verifySignature(@RequestBody VerificationRequest request) {
-        VerificationResult result = gostSignatureService.verifySignature(request);
+        VerificationResult result = cpuBoundExecutor.call(() -> gostSignatureService.verifySignature(request));
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * 3. Проверка подписи документа, переданного файлом (сертификат и подпись - параметрами формы)
+     */
+    @PostMapping(value = "/verify", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<VerificationResult> verifySignature(@RequestPart("document") MultipartFile file,
+                                                              @ModelAttribute VerificationRequest request) {
+        try (SpooledDocument document = documentSpooler.spool(file)) {
+            return ResponseEntity.ok(cpuBoundExecutor.call(() -> gostSignatureService.verifySignature(request, document)));
+        }
+    }
+
+    /**
+     * 3. Проверка подписи документа, переданного телом запроса.
+     * Сертификат и подпись (Base64) - в заголовках X-Certificate и X-Signature
+     */
+    @PostMapping(value = "/verify", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<VerificationResult> verifySignature(@RequestHeader("X-Certificate") String certificate,
+                                                              @RequestHeader("X-Signature") String signature,
+                                                              HttpServletRequest httpRequest) {
+        VerificationRequest request = new VerificationRequest();
+        request.setCertificateBase64(certificate);
+        request.setSignatureBase64(signature);
+        try (SpooledDocument document = spoolBody(httpRequest)) {
+            return ResponseEntity.ok(cpuBoundExecutor.call(() -> gostSignatureService.verifySignature(request, document)));
+        }
+    }
+
+    /**
+     * 3a. Проверка подписей по хэшам ГОСТ Р 34.11-2012
+     */
+    @PostMapping(value = "/verify-digest", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DigestVerificationResult> verifyDigest(@RequestBody DigestVerificationRequest request) {
+        return ResponseEntity.ok(cpuBoundExecutor.call(() -> gostSignatureService.verifyDigests(request)));
+    }
+
+    /**
+     * 3b. Пакетная проверка: тело запроса - NDJSON (id, certificateBase64, signatureBase64,
+     * documentBase64 или digestBase64), общий сертификат можно передать в заголовке X-Certificate.
+     * Результаты отдаются потоком NDJSON в порядке запроса
+     */
+    @PostMapping(value = "/verify-batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> verifyBatch(@RequestHeader(value = "X-Certificate", required = false) String certificate,
+                                                             HttpServletRequest httpRequest) {
+        StreamingResponseBody body = output -> {
+            try (InputStream input = httpRequest.getInputStream()) {
+                batchVerifyService.verify(input, output, certificate);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * 5. Асинхронное задание: документ в JSON. Операции: sign-document-with-signature, add-stamp.
+     * Ответ 202 с идентификатором задания; 429, если очередь заданий заполнена
+     */
+    @PostMapping(value = "/jobs/{operation}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JobStatus> submitJob(@PathVariable("operation") String operation,
+                                               @RequestBody DocumentSignRequest request) {
+        JobService.Operation jobOperation = JobService.Operation.fromPath(operation);
+        return accepted(jobService.submit(jobOperation, request, SpooledDocument.of(request.getDocumentBytes())));
+    }
+
+    /**
+     * 5. Асинхронное задание: документ файлом
+     */
+    @PostMapping(value = "/jobs/{operation}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<JobStatus> submitJob(@PathVariable("operation") String operation,
+                                               @RequestPart("document") MultipartFile file,
+                                               @ModelAttribute DocumentSignRequest request) {
+        JobService.Operation jobOperation = JobService.Operation.fromPath(operation);
+        return accepted(jobService.submit(jobOperation, request, documentSpooler.spool(file)));
+    }
+
+    /**
+     * 5. Асинхронное задание: документ телом запроса, ключ и сертификат - в заголовках
+     */
+    @PostMapping(value = "/jobs/{operation}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<JobStatus> submitJob(@PathVariable("operation") String operation,
+                                               @ModelAttribute DocumentSignRequest request,
+                                               @RequestHeader(value = "X-Key-Handle", required = false) String keyHandle,
+                                               @RequestHeader(value = "X-Private-Key", required = false) String privateKey,
+                                               @RequestHeader(value = "X-Certificate", required = false) String certificate,
+                                               HttpServletRequest httpRequest) {
+        JobService.Operation jobOperation = JobService.Operation.fromPath(operation);
+        applyKeyHeaders(request, keyHandle, privateKey, certificate);
+        return accepted(jobService.submit(jobOperation, request, spoolBody(httpRequest)));
+    }
+
+    /**
+     * 5a. Состояние задания: этап, страницы штампа, процент готовности, ошибка
+     */
+    @GetMapping(value = "/jobs/{id}")
+    public ResponseEntity<JobStatus> getJob(@PathVariable("id") String id) {
+        return ResponseEntity.ok(jobService.getStatus(id));
+    }
+
+    /**
+     * 5b. Ход задания событиями SSE (событие status с тем же JSON, что и 5a)
+     */
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getJobEvents(@PathVariable("id") String id) {
+        return jobService.subscribe(id);
+    }
+
+    /**
+     * 5c. Результат завершенного задания; 409, пока задание выполняется
+     */
+    @GetMapping(value = "/jobs/{id}/result")
+    public ResponseEntity<Resource> getJobResult(@PathVariable("id") String id) {
+        JobService.Operation operation = JobService.Operation.fromPath(jobService.getStatus(id).getOperation());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + operation.getFileName())
+                .contentType(operation.getContentType())
+                .body(new FileSystemResource(jobService.getResult(id)));
+    }
+
+    /**
+     * 5d. Отмена задания и удаление результата
+     */
+    @DeleteMapping(value = "/jobs/{id}")
+    public ResponseEntity<Void> deleteJob(@PathVariable("id") String id) {
+        jobService.delete(id);
+        return ResponseEntity.noContent().build();
+    }
+
     /**
      * 4. Генерация тестового PDF
      */
@@ -103,4 +473,71 @@ public class SignController {
                 .contentType(MediaType.APPLICATION_PDF)
                 .body(pdfBytes);
     }
-} 
\ No newline at end of file
+
+    private static ResponseEntity<JobStatus> accepted(JobStatus status) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + status.getId()))
+                .body(status);
+    }
+
+    /**
+     * ZIP архив, который пишется прямо в поток ответа. Пока первые килобайты не ушли клиенту,
+     * ошибка подписи еще возвращается обычным статусом
+     */
+    private static ResponseEntity<StreamingResponseBody> zipAttachment(String fileName, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> pdfAttachment(String fileName, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                .contentType(MediaType.APPLICATION_PDF)
+                .body(body);
+    }
+
+    /**
+     * Принимает тело запроса потоком, без чтения в память целиком
+     */
+    private SpooledDocument spoolBody(HttpServletRequest httpRequest) {
+        try (InputStream body = httpRequest.getInputStream()) {
+            return documentSpooler.spool(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при чтении тела запроса: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Уточняет допуск запроса (AdmissionFilter) по принятому документу: полоса по размеру и числу страниц,
+     * резерв памяти под разбор PDF. Разбор PDF сохраняется в документе и повторно не выполняется.
+     * При отказе документ сразу удаляется
+     */
+    private static void admitDocument(AdmissionControl.Lease lease, SpooledDocument document) {
+        if (lease == null) {
+            return;
+        }
+        try {
+            lease.probe(document);
+        } catch (RuntimeException e) {
+            document.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Ключ и сертификат из заголовков имеют приоритет над параметрами запроса
+     */
+    private void applyKeyHeaders(DocumentSignRequest request, String keyHandle, String privateKey, String certificate) {
+        if (keyHandle != null && !keyHandle.isEmpty()) {
+            request.setKeyHandle(keyHandle);
+        }
+        if (privateKey != null && !privateKey.isEmpty()) {
+            request.setPrivateKeyBase64(privateKey);
+        }
+        if (certificate != null && !certificate.isEmpty()) {
+            request.setCertificateBase64(certificate);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.spec.ECParameterSpec;
+import org.bouncycastle.operator.ContentSigner;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+
+/**
+ * Бэкенд BouncyCastle. Подпись сертификатов идет по собственной реализации ({@link GostContentSigner}),
+ * генерация ключей - через провайдер BC
+ */
+public class BcGostCryptoEngine extends JcaGostCryptoEngine {
+    public static final String NAME = "bc";
+
+    public BcGostCryptoEngine() {
+        super(GostProviders.BOUNCY_CASTLE, "ECGOST3410-2012", "GOST3411WITHECGOST3410-2012-256");
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected KeyPairGenerator createGenerator(String paramSet) throws GeneralSecurityException {
+        ECParameterSpec ecSpec = ECNamedCurveTable.getParameterSpec(paramSet);
+        if (ecSpec == null) {
+            throw new InvalidAlgorithmParameterException("Неизвестный набор параметров ГОСТ: " + paramSet);
+        }
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("ECGOST3410-2012", GostProviders.BOUNCY_CASTLE);
+        kpg.initialize(ecSpec, new SecureRandom());
+        return kpg;
+    }
+
+    @Override
+    public ContentSigner contentSigner(PrivateKey privateKey) {
+        try {
+            return new GostContentSigner(GostPrehashSignature.privateKeyParameters(privateKey));
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Ключ не подходит для подписи ГОСТ Р 34.10-2012: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.gostsign.crypto;
+
+import ru.gostsign.model.CacheMetrics;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Пул готовых криптографических объектов (Signature, MessageDigest, KeyFactory и т.п.) на неблокирующей очереди.
+ * Объект берется на одну операцию и возвращается после сброса состояния; поиск реализации в провайдере
+ * и создание объекта происходят только при первом обращении или при пиковой нагрузке.
+ * В отличие от ThreadLocal, число объектов ограничено числом одновременных операций, а не числом потоков
+ */
+public final class CryptoContextPool<T> {
+    private final String name;
+    private final Factory<T> factory;
+    private final Consumer<T> reset;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param reset сброс состояния при возврате; null - объект не хранит состояния между операциями
+     * @param maxIdle сколько свободных объектов хранить; лишние при возврате отбрасываются
+     */
+    public CryptoContextPool(String name, Factory<T> factory, Consumer<T> reset, int maxIdle) {
+        this.name = name;
+        this.factory = factory;
+        this.reset = reset;
+        this.maxIdle = maxIdle;
+    }
+
+    public CryptoContextPool(String name, Factory<T> factory, Consumer<T> reset) {
+        this(name, factory, reset, Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    public T acquire() {
+        T context = idle.poll();
+        if (context != null) {
+            idleCount.decrementAndGet();
+            reused.incrementAndGet();
+            return context;
+        }
+        created.incrementAndGet();
+        try {
+            return factory.create();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Не удалось создать объект " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Возвращает объект в пул. После исключения посреди операции объект все равно можно вернуть:
+     * состояние сбрасывается здесь, а Signature заново инициализируется при следующем initSign/initVerify
+     */
+    public void release(T context) {
+        if (reset != null) {
+            reset.accept(context);
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        idle.offer(context);
+    }
+
+    /**
+     * Попадания - выдачи готового объекта, промахи - созданные объекты, вытеснения - отброшенные при возврате
+     */
+    public CacheMetrics getMetrics() {
+        long hits = reused.get();
+        long misses = created.get();
+        long total = hits + misses;
+        return new CacheMetrics("context:" + name, idleCount.get(), hits, misses,
+                total == 0 ? 1.0 : (double) hits / total, dropped.get());
+    }
+
+    public interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.gostsign.crypto;
+
+import ru.gostsign.model.CacheMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.List;
+
+/**
+ * Общие пулы объектов для операций на каждом запросе: хэши, разбор ключей и сертификатов, буферы чтения файлов
+ */
+public final class CryptoContexts {
+    private static final int FILE_BUFFER_SIZE = 1024 * 1024;
+
+    static final CryptoContextPool<StreebogDigest> STREEBOG_256 =
+            new CryptoContextPool<>("streebog-256", StreebogDigest::streebog256, StreebogDigest::reset);
+    private static final CryptoContextPool<MessageDigest> SHA_256 =
+            new CryptoContextPool<>("SHA-256", () -> MessageDigest.getInstance("SHA-256"), MessageDigest::reset);
+    private static final CryptoContextPool<KeyFactory> GOST_KEY_FACTORY = new CryptoContextPool<>("ECGOST3410-2012",
+            () -> KeyFactory.getInstance("ECGOST3410-2012", GostProviders.BOUNCY_CASTLE), null);
+    private static final CryptoContextPool<CertificateFactory> X509_FACTORY =
+            new CryptoContextPool<>("X.509", () -> CertificateFactory.getInstance("X.509"), null);
+    // Прямые буферы освобождаются только сборщиком мусора, поэтому их держим немного
+    static final CryptoContextPool<ByteBuffer> FILE_BUFFERS = new CryptoContextPool<>("file-buffer",
+            () -> ByteBuffer.allocateDirect(FILE_BUFFER_SIZE), ByteBuffer::clear,
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+
+    private CryptoContexts() {
+    }
+
+    public static byte[] sha256(byte[] data) {
+        MessageDigest digest = SHA_256.acquire();
+        try {
+            return digest.digest(data);
+        } finally {
+            SHA_256.release(digest);
+        }
+    }
+
+    /**
+     * Разбор приватного ключа ГОСТ Р 34.10-2012 в формате PKCS#8 провайдером BouncyCastle
+     */
+    public static PrivateKey parseGostPrivateKey(byte[] pkcs8) throws GeneralSecurityException {
+        KeyFactory keyFactory = GOST_KEY_FACTORY.acquire();
+        try {
+            return keyFactory.generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+        } finally {
+            GOST_KEY_FACTORY.release(keyFactory);
+        }
+    }
+
+    public static X509Certificate parseCertificate(byte[] encoded) throws GeneralSecurityException {
+        CertificateFactory certFactory = X509_FACTORY.acquire();
+        try {
+            return (X509Certificate) certFactory.generateCertificate(new ByteArrayInputStream(encoded));
+        } finally {
+            X509_FACTORY.release(certFactory);
+        }
+    }
+
+    public static List<CacheMetrics> getMetrics() {
+        return List.of(STREEBOG_256.getMetrics(), SHA_256.getMetrics(), GOST_KEY_FACTORY.getMetrics(),
+                X509_FACTORY.getMetrics(), FILE_BUFFERS.getMetrics());
+    }
+}
@@ -0,0 +1,188 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECLookupTable;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointPreCompInfo;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.bouncycastle.math.raw.Nat;
+import org.bouncycastle.util.Arrays;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Проверка пакета подписей ГОСТ Р 34.10-2012 под одним открытым ключом.
+ * Точка z1*G + z2*Q вычисляется одним проходом (умножения чередуются, удвоения общие) по таблицам гребенки
+ * для G и для Q. Таблица для Q хранится в самой точке, поэтому для ключа из кэша сертификатов
+ * она строится один раз и используется всеми последующими проверками.
+ * Обратные значения хэшей по модулю q и приведение результатов к аффинным координатам
+ * выполняются для всего пакета одной инверсией.
+ */
+public final class GostBatchVerifier {
+    // С такого числа подписей под ключом таблица гребенки для Q окупается сразу
+    public static final int PROMOTE_THRESHOLD = 4;
+
+    private GostBatchVerifier() {
+    }
+
+    public static boolean verify(ECPublicKeyParameters publicKey, byte[] digest, byte[] signature) {
+        return verify(publicKey, Collections.singletonList(digest), Collections.singletonList(signature))[0];
+    }
+
+    /**
+     * Строит таблицу гребенки для Q заранее: ключ, проверивший PROMOTE_THRESHOLD подписей по одной
+     * (/verify, строки /verify-batch), дальше проверяется по таблице так же, как в пакете
+     */
+    public static void promote(ECPublicKeyParameters publicKey) {
+        ECPoint q = publicKey.getQ();
+        if (q.getCurve() == publicKey.getParameters().getG().getCurve() && !hasCombTable(q)) {
+            FixedPointUtil.precompute(q);
+        }
+    }
+
+    /**
+     * Результат по каждой подписи в порядке хэшей; подпись неверного формата - недействительна
+     */
+    public static boolean[] verify(ECPublicKeyParameters publicKey, List<byte[]> digests, List<byte[]> signatures) {
+        int count = digests.size();
+        BigInteger n = publicKey.getParameters().getN();
+        ECPoint g = publicKey.getParameters().getG();
+        ECPoint q = publicKey.getQ();
+
+        BigInteger[] r = new BigInteger[count];
+        BigInteger[] s = new BigInteger[count];
+        BigInteger[] e = new BigInteger[count];
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] digest = digests.get(i);
+            if (digest == null || digest.length != GostPrehashSignature.DIGEST_SIZE) {
+                throw new IllegalArgumentException("Хэш ГОСТ Р 34.11-2012 должен быть длиной "
+                        + GostPrehashSignature.DIGEST_SIZE + " байта");
+            }
+            byte[] signature = signatures.get(i);
+            if (signature == null || signature.length != GostPrehashSignature.SIGNATURE_SIZE) {
+                continue;
+            }
+            BigInteger[] rs = GostPrehashSignature.decode(signature);
+            if (!inRange(rs[0], n) || !inRange(rs[1], n)) {
+                continue;
+            }
+            r[i] = rs[0];
+            s[i] = rs[1];
+            // Хэш интерпретируется как little-endian, как в ECGOST3410Signer
+            BigInteger alpha = new BigInteger(1, Arrays.reverse(digest)).mod(n);
+            e[i] = alpha.signum() == 0 ? BigInteger.ONE : alpha;
+            valid++;
+        }
+
+        BigInteger[] v = invertAll(e, n);
+        boolean comb = g.getCurve() == q.getCurve()
+                && (valid >= PROMOTE_THRESHOLD || hasCombTable(q));
+        ECPoint[] points = new ECPoint[count];
+        for (int i = 0; i < count; i++) {
+            if (e[i] == null) {
+                continue;
+            }
+            BigInteger z1 = s[i].multiply(v[i]).mod(n);
+            BigInteger z2 = n.subtract(r[i]).multiply(v[i]).mod(n);
+            points[i] = comb ? sumOfTwoMultipliesComb(g, z1, q, z2) : ECAlgorithms.sumOfTwoMultiplies(g, z1, q, z2);
+        }
+        normalizeAll(g.getCurve(), points);
+
+        boolean[] results = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            ECPoint point = points[i];
+            results[i] = point != null && !point.isInfinity()
+                    && point.getAffineXCoord().toBigInteger().mod(n).equals(r[i]);
+        }
+        return results;
+    }
+
+    private static boolean inRange(BigInteger value, BigInteger n) {
+        return value.signum() > 0 && value.compareTo(n) < 0;
+    }
+
+    /**
+     * Обратные по модулю q для всех непустых элементов одной инверсией (прием Монтгомери)
+     */
+    private static BigInteger[] invertAll(BigInteger[] values, BigInteger n) {
+        BigInteger[] prefix = new BigInteger[values.length];
+        BigInteger acc = BigInteger.ONE;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                acc = acc.multiply(values[i]).mod(n);
+            }
+            prefix[i] = acc;
+        }
+        BigInteger[] inverses = new BigInteger[values.length];
+        BigInteger inv = acc.modInverse(n);
+        for (int i = values.length - 1; i >= 0; i--) {
+            if (values[i] == null) {
+                continue;
+            }
+            BigInteger before = i == 0 ? BigInteger.ONE : prefix[i - 1];
+            inverses[i] = inv.multiply(before).mod(n);
+            inv = inv.multiply(values[i]).mod(n);
+        }
+        return inverses;
+    }
+
+    private static boolean hasCombTable(ECPoint point) {
+        return FixedPointUtil.getFixedPointPreCompInfo(
+                point.getCurve().getPreCompInfo(point, FixedPointUtil.PRECOMP_NAME)) != null;
+    }
+
+    /**
+     * k*P + l*Q по таблицам гребенки обеих точек: на каждом шаге одно удвоение и два сложения
+     */
+    private static ECPoint sumOfTwoMultipliesComb(ECPoint p, BigInteger k, ECPoint q, BigInteger l) {
+        ECCurve curve = p.getCurve();
+        FixedPointPreCompInfo infoP = FixedPointUtil.precompute(p);
+        FixedPointPreCompInfo infoQ = FixedPointUtil.precompute(q);
+        int width = infoP.getWidth();
+        int combSize = FixedPointUtil.getCombSize(curve);
+        if (infoQ.getWidth() != width || k.bitLength() > combSize || l.bitLength() > combSize) {
+            return ECAlgorithms.sumOfTwoMultiplies(p, k, q, l);
+        }
+        ECLookupTable tableP = infoP.getLookupTable();
+        ECLookupTable tableQ = infoQ.getLookupTable();
+
+        int d = (combSize + width - 1) / width;
+        int fullComb = d * width;
+        int[] kBits = Nat.fromBigInteger(fullComb, k);
+        int[] lBits = Nat.fromBigInteger(fullComb, l);
+
+        ECPoint result = curve.getInfinity();
+        int top = fullComb - 1;
+        for (int i = 0; i < d; i++) {
+            int indexK = 0;
+            int indexL = 0;
+            for (int j = top - i; j >= 0; j -= d) {
+                indexK = (indexK << 1) | ((kBits[j >>> 5] >>> (j & 0x1F)) & 1);
+                indexL = (indexL << 1) | ((lBits[j >>> 5] >>> (j & 0x1F)) & 1);
+            }
+            result = result.twicePlus(tableP.lookupVar(indexK).add(tableQ.lookupVar(indexL)));
+        }
+        return result.add(infoP.getOffset()).add(infoQ.getOffset());
+    }
+
+    private static void normalizeAll(ECCurve curve, ECPoint[] points) {
+        int count = 0;
+        ECPoint[] present = new ECPoint[points.length];
+        int[] index = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] != null) {
+                present[count] = points[i].getCurve() == curve ? points[i] : points[i].normalize();
+                index[count++] = i;
+            }
+        }
+        curve.normalizeAll(present, 0, count, null);
+        for (int i = 0; i < count; i++) {
+            points[index[i]] = present[i];
+        }
+    }
+}
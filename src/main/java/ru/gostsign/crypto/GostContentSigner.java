@@ -0,0 +1,44 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.asn1.rosstandart.RosstandartObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.crypto.io.DigestOutputStream;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.bouncycastle.operator.ContentSigner;
+
+import java.io.OutputStream;
+
+/**
+ * ContentSigner "GOST3411WITHECGOST3410-2012-256" для сертификатов и CMS поверх {@link GostPrehashSignature}.
+ * В отличие от JcaContentSignerBuilder не преобразует ключ заново при каждой подписи
+ * и использует общие таблицы базовой точки (см. {@link GostCurves}). Экземпляр одноразовый
+ */
+public class GostContentSigner implements ContentSigner {
+    private static final AlgorithmIdentifier ALGORITHM =
+            new AlgorithmIdentifier(RosstandartObjectIdentifiers.id_tc26_signwithdigest_gost_3410_12_256);
+
+    private final ECKeyParameters privateKey;
+    private final StreebogDigest digest = StreebogDigest.streebog256();
+    private final OutputStream output = new DigestOutputStream(digest);
+
+    public GostContentSigner(ECKeyParameters privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    @Override
+    public AlgorithmIdentifier getAlgorithmIdentifier() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    @Override
+    public byte[] getSignature() {
+        byte[] hash = new byte[GostPrehashSignature.DIGEST_SIZE];
+        digest.doFinal(hash, 0);
+        return GostPrehashSignature.sign(privateKey, hash);
+    }
+}
@@ -0,0 +1,40 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.operator.ContentSigner;
+import ru.gostsign.model.CacheMetrics;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.List;
+
+/**
+ * Криптографический бэкенд ГОСТ Р 34.10-2012 (256 бит) для генерации ключей и подписи сертификатов и CMS.
+ * Реализация выбирается настройкой gostsign.crypto.engine (см. {@link ru.gostsign.service.CryptoEngineService}).
+ * Подпись и проверка документов работают с хэшем, посчитанным при приеме документа, и всегда идут
+ * через {@link GostPrehashSignature} и {@link GostBatchVerifier}; в выбор бэкенда они не входят.
+ * Методы потокобезопасны
+ */
+public interface GostCryptoEngine {
+
+    /**
+     * Короткое имя бэкенда для настроек и логов (bc, jcp)
+     */
+    String getName();
+
+    /**
+     * Имя JCA-провайдера, через который работает бэкенд
+     */
+    String getProviderName();
+
+    KeyPair generateKeyPair(String paramSet);
+
+    /**
+     * Подписывающий объект для сертификатов и CMS; экземпляр одноразовый
+     */
+    ContentSigner contentSigner(PrivateKey privateKey);
+
+    /**
+     * Статистика пулов объектов бэкенда (Signature, генераторы ключей)
+     */
+    List<CacheMetrics> getContextMetrics();
+}
@@ -0,0 +1,99 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cryptopro.ECGOST3410NamedCurves;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECNamedDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointUtil;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Общие экземпляры параметров именованных кривых ГОСТ Р 34.10 с заранее вычисленными таблицами базовой точки.
+ * BC хранит таблицы умножения (гребенка для подписи, окна WNAF для проверки) в самой точке G, а при каждом
+ * преобразовании ключа из JCA создает новую кривую и новую G - таблицы строятся заново на каждую операцию.
+ * Ключи, приведенные к этим параметрам, используют одни и те же таблицы во всех потоках
+ */
+public final class GostCurves {
+    private static final List<ECDomainParameters> CURVES;
+    private static final Map<String, ECDomainParameters> BY_NAME;
+
+    static {
+        List<ECDomainParameters> curves = new ArrayList<>();
+        Map<String, ECDomainParameters> byName = new HashMap<>();
+        Enumeration<?> names = ECGOST3410NamedCurves.getNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            ASN1ObjectIdentifier oid = ECGOST3410NamedCurves.getOID(name);
+            ECNamedDomainParameters domain = new ECNamedDomainParameters(oid, ECGOST3410NamedCurves.getByNameX9(name));
+            // Наборы параметров с совпадающей кривой (например, paramSetB и CryptoPro-A) делят одну запись
+            ECDomainParameters shared = find(curves, domain);
+            if (shared == null) {
+                FixedPointUtil.precompute(domain.getG());
+                curves.add(domain);
+                shared = domain;
+            }
+            byName.put(name, shared);
+        }
+        CURVES = Collections.unmodifiableList(curves);
+        BY_NAME = Collections.unmodifiableMap(byName);
+    }
+
+    private GostCurves() {
+    }
+
+    /**
+     * Общие параметры набора по имени (например, "Tc26-Gost-3410-12-256-paramSetA"); null для неизвестного имени
+     */
+    public static ECDomainParameters byName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    /**
+     * Приватный ключ на общих параметрах кривой; ключ на неизвестной кривой возвращается без изменений
+     */
+    public static ECPrivateKeyParameters canonicalize(ECPrivateKeyParameters key) {
+        ECDomainParameters domain = find(CURVES, key.getParameters());
+        if (domain == null || domain == key.getParameters()) {
+            return key;
+        }
+        return new ECPrivateKeyParameters(key.getD(), domain);
+    }
+
+    /**
+     * Открытый ключ на общих параметрах кривой: точка Q переносится на общую кривую,
+     * чтобы проверка подписи складывала кратные G и Q на одной кривой с готовыми таблицами G
+     */
+    public static ECPublicKeyParameters canonicalize(ECPublicKeyParameters key) {
+        ECDomainParameters domain = find(CURVES, key.getParameters());
+        if (domain == null || domain == key.getParameters()) {
+            return key;
+        }
+        ECPoint q = domain.getCurve().importPoint(key.getQ());
+        return new ECPublicKeyParameters(q, domain);
+    }
+
+    private static ECDomainParameters find(List<ECDomainParameters> curves, ECDomainParameters domain) {
+        BigInteger n = domain.getN();
+        for (ECDomainParameters candidate : curves) {
+            if (candidate == domain) {
+                return candidate;
+            }
+            if (candidate.getN().equals(n)
+                    && candidate.getCurve().equals(domain.getCurve())
+                    && candidate.getG().equals(domain.getG())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
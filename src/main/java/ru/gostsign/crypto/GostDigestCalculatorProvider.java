@@ -0,0 +1,53 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.asn1.rosstandart.RosstandartObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.crypto.io.DigestOutputStream;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+
+import java.io.OutputStream;
+
+/**
+ * Вычислители хэша для CMS: ГОСТ Р 34.11-2012 считается через {@link StreebogDigest},
+ * остальные алгоритмы - через переданный провайдер
+ */
+public class GostDigestCalculatorProvider implements DigestCalculatorProvider {
+    private final DigestCalculatorProvider fallback;
+
+    public GostDigestCalculatorProvider(DigestCalculatorProvider fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public DigestCalculator get(AlgorithmIdentifier algorithm) throws OperatorCreationException {
+        StreebogDigest digest;
+        if (RosstandartObjectIdentifiers.id_tc26_gost_3411_12_256.equals(algorithm.getAlgorithm())) {
+            digest = StreebogDigest.streebog256();
+        } else if (RosstandartObjectIdentifiers.id_tc26_gost_3411_12_512.equals(algorithm.getAlgorithm())) {
+            digest = StreebogDigest.streebog512();
+        } else {
+            return fallback.get(algorithm);
+        }
+        OutputStream output = new DigestOutputStream(digest);
+        return new DigestCalculator() {
+            @Override
+            public AlgorithmIdentifier getAlgorithmIdentifier() {
+                return algorithm;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return output;
+            }
+
+            @Override
+            public byte[] getDigest() {
+                byte[] hash = new byte[digest.getDigestSize()];
+                digest.doFinal(hash, 0);
+                return hash;
+            }
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.util.BigIntegers;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Заранее вычисленная пара (k, r = x(kG) mod q) для одной подписи ГОСТ Р 34.10-2012.
+ * Пара не зависит от сообщения и ключа, но повторное использование k раскрывает приватный ключ,
+ * поэтому пара выдается ровно один раз: повторная попытка взять k завершается исключением.
+ * k хранится массивом байт и затирается нулями, как только его забрали для подписи
+ */
+public final class GostNonce {
+    private final ECDomainParameters domain;
+    private final byte[] k;
+    private final BigInteger r;
+    private final AtomicBoolean used = new AtomicBoolean();
+
+    private GostNonce(ECDomainParameters domain, BigInteger k, BigInteger r) {
+        this.domain = domain;
+        this.k = BigIntegers.asUnsignedByteArray(k);
+        this.r = r;
+    }
+
+    /**
+     * Случайное k из [1, q-1] и r = x(kG) mod q, r != 0
+     */
+    public static GostNonce generate(ECDomainParameters domain, SecureRandom random) {
+        BigInteger n = domain.getN();
+        FixedPointCombMultiplier multiplier = new FixedPointCombMultiplier();
+        while (true) {
+            BigInteger k = BigIntegers.createRandomInRange(BigInteger.ONE, n.subtract(BigInteger.ONE), random);
+            ECPoint p = multiplier.multiply(domain.getG(), k).normalize();
+            BigInteger r = p.getAffineXCoord().toBigInteger().mod(n);
+            if (r.signum() != 0) {
+                return new GostNonce(domain, k, r);
+            }
+        }
+    }
+
+    public ECDomainParameters getDomain() {
+        return domain;
+    }
+
+    BigInteger getR() {
+        return r;
+    }
+
+    /**
+     * Возвращает k и помечает пару использованной
+     */
+    BigInteger claim() {
+        if (!used.compareAndSet(false, true)) {
+            throw new IllegalStateException("Одноразовое значение подписи уже использовано");
+        }
+        BigInteger value = new BigInteger(1, k);
+        Arrays.fill(k, (byte) 0);
+        return value;
+    }
+
+    /**
+     * Затирает неиспользованную пару (остановка пула); взять k после этого нельзя
+     */
+    public void destroy() {
+        if (used.compareAndSet(false, true)) {
+            Arrays.fill(k, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.signers.ECGOST3410Signer;
+import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
+import org.bouncycastle.util.Arrays;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidKeyException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+
+/**
+ * Подпись ГОСТ Р 34.10-2012 (256 бит) над заранее вычисленным хэшем ГОСТ Р 34.11-2012.
+ * Формат подписи (s || r, по 32 байта) совпадает с "GOST3411WITHECGOST3410-2012-256" провайдера BC,
+ * поэтому подписи взаимозаменяемы с подписями, созданными через Signature над всем документом
+ */
+public final class GostPrehashSignature {
+    public static final int DIGEST_SIZE = 32;
+    public static final int SIGNATURE_SIZE = 64;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private GostPrehashSignature() {
+    }
+
+    /**
+     * Хэш ГОСТ Р 34.11-2012 (256 бит) от данных целиком
+     */
+    public static byte[] digest(byte[] data) {
+        StreebogDigest digest = CryptoContexts.STREEBOG_256.acquire();
+        try {
+            digest.update(data, 0, data.length);
+            byte[] hash = new byte[DIGEST_SIZE];
+            digest.doFinal(hash, 0);
+            return hash;
+        } finally {
+            CryptoContexts.STREEBOG_256.release(digest);
+        }
+    }
+
+    /**
+     * Хэш файла целиком; файл читается каналом в прямой буфер, без копирования в массивы
+     */
+    public static byte[] digest(Path file) throws IOException {
+        StreebogDigest digest = CryptoContexts.STREEBOG_256.acquire();
+        ByteBuffer buffer = CryptoContexts.FILE_BUFFERS.acquire();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            byte[] hash = new byte[DIGEST_SIZE];
+            digest.doFinal(hash, 0);
+            return hash;
+        } finally {
+            CryptoContexts.FILE_BUFFERS.release(buffer);
+            CryptoContexts.STREEBOG_256.release(digest);
+        }
+    }
+
+    public static byte[] sign(PrivateKey privateKey, byte[] digest) throws InvalidKeyException {
+        return sign(privateKeyParameters(privateKey), digest);
+    }
+
+    /**
+     * Подпись ключом, уже преобразованным в параметры BC: при подписании многих хэшей
+     * одним ключом преобразование выполняется один раз
+     */
+    public static byte[] sign(ECKeyParameters privateKey, byte[] digest) {
+        checkDigest(digest);
+        ECGOST3410Signer signer = new ECGOST3410Signer();
+        signer.init(true, new ParametersWithRandom(privateKey, RANDOM));
+        BigInteger[] sig = signer.generateSignature(digest);
+        return encode(sig[0], sig[1]);
+    }
+
+    /**
+     * Подпись с заранее вычисленной парой (k, r): в момент подписи остаются только операции по модулю q.
+     * Пара должна быть вычислена на тех же параметрах кривой, что и ключ; после вызова она использована
+     */
+    public static byte[] sign(ECKeyParameters privateKey, byte[] digest, GostNonce nonce) {
+        checkDigest(digest);
+        ECDomainParameters domain = privateKey.getParameters();
+        if (nonce.getDomain() != domain) {
+            throw new IllegalArgumentException("Одноразовое значение вычислено для другой кривой");
+        }
+        BigInteger k = nonce.claim();
+        BigInteger n = domain.getN();
+        // Хэш интерпретируется как little-endian, как в ECGOST3410Signer
+        BigInteger e = new BigInteger(1, Arrays.reverse(digest)).mod(n);
+        if (e.signum() == 0) {
+            e = BigInteger.ONE;
+        }
+        BigInteger r = nonce.getR();
+        BigInteger s = k.multiply(e).add(((ECPrivateKeyParameters) privateKey).getD().multiply(r)).mod(n);
+        if (s.signum() == 0) {
+            // Практически невозможно; пара уже израсходована, подписываем с новым k
+            return sign(privateKey, digest);
+        }
+        return encode(r, s);
+    }
+
+    /**
+     * Параметры BC для приватного ключа на общих параметрах кривой (см. {@link GostCurves})
+     */
+    public static ECKeyParameters privateKeyParameters(PrivateKey privateKey) throws InvalidKeyException {
+        ECKeyParameters param = GostCurves.canonicalize((ECPrivateKeyParameters) ECUtil.generatePrivateKeyParameter(privateKey));
+        checkKeySize(param);
+        return param;
+    }
+
+    public static boolean verify(PublicKey publicKey, byte[] digest, byte[] signature) throws InvalidKeyException {
+        return verify(publicKeyParameters(publicKey), digest, signature);
+    }
+
+    /**
+     * Проверка ключом, заранее преобразованным в параметры BC (например, из кэша сертификатов).
+     * Для ключа, уже проверявшего пакет, используются сохраненные в Q таблицы (см. {@link GostBatchVerifier})
+     */
+    public static boolean verify(ECKeyParameters publicKey, byte[] digest, byte[] signature) {
+        checkDigest(digest);
+        return GostBatchVerifier.verify((ECPublicKeyParameters) publicKey, digest, signature);
+    }
+
+    /**
+     * Параметры BC для открытого ключа на общих параметрах кривой (см. {@link GostCurves})
+     */
+    public static ECKeyParameters publicKeyParameters(PublicKey publicKey) throws InvalidKeyException {
+        ECKeyParameters param = GostCurves.canonicalize((ECPublicKeyParameters) ECUtil.generatePublicKeyParameter(publicKey));
+        checkKeySize(param);
+        return param;
+    }
+
+    /**
+     * Кодирует подпись как s || r (big-endian, по 32 байта)
+     */
+    public static byte[] encode(BigInteger r, BigInteger s) {
+        byte[] sigBytes = new byte[SIGNATURE_SIZE];
+        copyUnsigned(s, sigBytes, 0);
+        copyUnsigned(r, sigBytes, SIGNATURE_SIZE / 2);
+        return sigBytes;
+    }
+
+    /**
+     * Возвращает {r, s}
+     */
+    public static BigInteger[] decode(byte[] signature) {
+        int half = SIGNATURE_SIZE / 2;
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(signature, 0, half));
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(signature, half, SIGNATURE_SIZE));
+        return new BigInteger[]{r, s};
+    }
+
+    private static void copyUnsigned(BigInteger value, byte[] out, int offset) {
+        byte[] bytes = value.toByteArray();
+        int start = bytes[0] == 0 ? 1 : 0;
+        int length = bytes.length - start;
+        System.arraycopy(bytes, start, out, offset + SIGNATURE_SIZE / 2 - length, length);
+    }
+
+    private static void checkDigest(byte[] digest) {
+        if (digest == null || digest.length != DIGEST_SIZE) {
+            throw new IllegalArgumentException("Хэш ГОСТ Р 34.11-2012 должен быть длиной " + DIGEST_SIZE + " байта");
+        }
+    }
+
+    private static void checkKeySize(ECKeyParameters param) throws InvalidKeyException {
+        if (param.getParameters().getN().bitLength() > 256) {
+            throw new InvalidKeyException("Ключ не соответствует ГОСТ Р 34.10-2012 (256 бит)");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.Provider;
+import java.security.Security;
+
+/**
+ * Регистрация JCA-провайдеров в одном месте: BouncyCastle всегда, КриптоПро JCP - если он доступен
+ */
+public final class GostProviders {
+    public static final String BOUNCY_CASTLE = BouncyCastleProvider.PROVIDER_NAME;
+    public static final String JCP = "JCP";
+    private static final String JCP_CLASS = "ru.CryptoPro.JCP.JCP";
+
+    private static volatile String jcpError;
+    private static boolean jcpLoaded;
+
+    private GostProviders() {
+    }
+
+    /**
+     * Регистрирует BouncyCastle, если он еще не зарегистрирован
+     */
+    public static synchronized void registerBouncyCastle() {
+        if (Security.getProvider(BOUNCY_CASTLE) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    /**
+     * Загружает и регистрирует JCP. Класс провайдера загружается по имени: без лицензии, зависимостей
+     * (ASN.1 runtime) или нативной части КриптоПро CSP он не инициализируется, и тогда возвращается false,
+     * а причина доступна через {@link #getJcpError()}
+     */
+    public static synchronized boolean registerJcp() {
+        if (jcpLoaded) {
+            return jcpError == null;
+        }
+        jcpLoaded = true;
+        if (Security.getProvider(JCP) != null) {
+            return true;
+        }
+        try {
+            Provider provider = (Provider) Class.forName(JCP_CLASS).getDeclaredConstructor().newInstance();
+            Security.addProvider(provider);
+            return true;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            jcpError = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+            return false;
+        }
+    }
+
+    public static String getJcpError() {
+        return jcpError;
+    }
+}
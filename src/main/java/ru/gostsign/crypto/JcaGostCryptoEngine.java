@@ -0,0 +1,122 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.asn1.rosstandart.RosstandartObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.ContentSigner;
+import ru.gostsign.model.CacheMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Бэкенд поверх JCA-провайдера. Объекты Signature и генераторы ключей берутся
+ * из {@link CryptoContextPool}: поиск реализации в провайдере стоит дороже самой операции над коротким сообщением
+ */
+public abstract class JcaGostCryptoEngine implements GostCryptoEngine {
+    private static final AlgorithmIdentifier SIGNATURE_ALGORITHM =
+            new AlgorithmIdentifier(RosstandartObjectIdentifiers.id_tc26_signwithdigest_gost_3410_12_256);
+
+    private final String providerName;
+    private final String keyAlgorithm;
+    private final String signatureAlgorithm;
+
+    private final CryptoContextPool<Signature> signatures;
+    private final Map<String, CryptoContextPool<KeyPairGenerator>> generators = new ConcurrentHashMap<>();
+
+    protected JcaGostCryptoEngine(String providerName, String keyAlgorithm, String signatureAlgorithm) {
+        this.providerName = providerName;
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        // Signature не сбрасывается: initSign перед каждой операцией начинает ее заново
+        this.signatures = new CryptoContextPool<>(signatureAlgorithm,
+                () -> Signature.getInstance(signatureAlgorithm, providerName), null);
+    }
+
+    /**
+     * Новый генератор, настроенный на набор параметров
+     */
+    protected abstract KeyPairGenerator createGenerator(String paramSet) throws GeneralSecurityException;
+
+    @Override
+    public String getProviderName() {
+        return providerName;
+    }
+
+    @Override
+    public KeyPair generateKeyPair(String paramSet) {
+        CryptoContextPool<KeyPairGenerator> pool = generators.computeIfAbsent(paramSet,
+                name -> new CryptoContextPool<>(keyAlgorithm + "/" + name, () -> createGenerator(name), null));
+        KeyPairGenerator generator = pool.acquire();
+        try {
+            return generator.generateKeyPair();
+        } finally {
+            pool.release(generator);
+        }
+    }
+
+    private byte[] sign(PrivateKey privateKey, byte[] data) {
+        Signature signature = signatures.acquire();
+        try {
+            signature.initSign(privateKey);
+            signature.update(data);
+            return signature.sign();
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Ключ не подходит для подписи " + signatureAlgorithm + ": " + e.getMessage(), e);
+        } catch (SignatureException e) {
+            throw new RuntimeException("Ошибка при подписании: " + e.getMessage(), e);
+        } finally {
+            signatures.release(signature);
+        }
+    }
+
+    /**
+     * Данные для подписи копятся в памяти (TBS сертификата или подписанные атрибуты CMS - единицы килобайт)
+     * и подписываются объектом Signature из пула
+     */
+    @Override
+    public ContentSigner contentSigner(PrivateKey privateKey) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        return new ContentSigner() {
+            @Override
+            public AlgorithmIdentifier getAlgorithmIdentifier() {
+                return SIGNATURE_ALGORITHM;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return buffer;
+            }
+
+            @Override
+            public byte[] getSignature() {
+                return sign(privateKey, buffer.toByteArray());
+            }
+        };
+    }
+
+    @Override
+    public List<CacheMetrics> getContextMetrics() {
+        List<CacheMetrics> metrics = new ArrayList<>();
+        metrics.add(signatures.getMetrics());
+        for (CryptoContextPool<KeyPairGenerator> pool : generators.values()) {
+            metrics.add(pool.getMetrics());
+        }
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " (" + providerName + ": " + keyAlgorithm + ", " + signatureAlgorithm + ")";
+    }
+}
@@ -0,0 +1,29 @@
+package ru.gostsign.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+
+/**
+ * Бэкенд КриптоПро JCP (lib/cprocsp-pki-jcp). Имена алгоритмов - из ru.CryptoPro.JCP.JCP;
+ * на класс провайдера код не ссылается, чтобы приложение запускалось и без рабочего JCP.
+ * Ключи создаются на наборе параметров, заданном в настройках JCP по умолчанию
+ */
+public class JcpGostCryptoEngine extends JcaGostCryptoEngine {
+    public static final String NAME = "jcp";
+
+    private static final String KEY_ALGORITHM = "GOST3410_2012_256";
+
+    public JcpGostCryptoEngine() {
+        super(GostProviders.JCP, KEY_ALGORITHM, "GOST3411_2012_256withGOST3410_2012_256");
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected KeyPairGenerator createGenerator(String paramSet) throws GeneralSecurityException {
+        return KeyPairGenerator.getInstance(KEY_ALGORITHM, GostProviders.JCP);
+    }
+}
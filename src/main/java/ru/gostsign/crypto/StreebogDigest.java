@@ -0,0 +1,380 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.crypto.ExtendedDigest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Хэш ГОСТ Р 34.11-2012 (Стрибог), 256 и 512 бит, совместимый с GOST3411_2012_256Digest / GOST3411_2012_512Digest.
+ * Состояние хранится 64-битными словами (little-endian, как в векторном представлении стандарта),
+ * преобразование LPS выполняется по восьми совмещенным таблицам long[256], построенным при загрузке класса.
+ * Блоки читаются из массива или ByteBuffer (в том числе отображенного в память файла) без промежуточных копий,
+ * обработка блока не выделяет память. Экземпляр не потокобезопасен
+ */
+public final class StreebogDigest implements ExtendedDigest {
+    private static final int BLOCK_SIZE = 64;
+    private static final long IV_256 = 0x0101010101010101L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Подстановка pi (та же, что в ГОСТ Р 34.12-2015 "Кузнечик")
+    private static final int[] PI = {
+            252, 238, 221, 17, 207, 110, 49, 22, 251, 196, 250, 218, 35, 197, 4, 77,
+            233, 119, 240, 219, 147, 46, 153, 186, 23, 54, 241, 187, 20, 205, 95, 193,
+            249, 24, 101, 90, 226, 92, 239, 33, 129, 28, 60, 66, 139, 1, 142, 79,
+            5, 132, 2, 174, 227, 106, 143, 160, 6, 11, 237, 152, 127, 212, 211, 31,
+            235, 52, 44, 81, 234, 200, 72, 171, 242, 42, 104, 162, 253, 58, 206, 204,
+            181, 112, 14, 86, 8, 12, 118, 18, 191, 114, 19, 71, 156, 183, 93, 135,
+            21, 161, 150, 41, 16, 123, 154, 199, 243, 145, 120, 111, 157, 158, 178, 177,
+            50, 117, 25, 61, 255, 53, 138, 126, 109, 84, 198, 128, 195, 189, 13, 87,
+            223, 245, 36, 169, 62, 168, 67, 201, 215, 121, 214, 246, 124, 34, 185, 3,
+            224, 15, 236, 222, 122, 148, 176, 188, 220, 232, 40, 80, 78, 51, 10, 74,
+            167, 151, 96, 115, 30, 0, 98, 68, 26, 184, 56, 130, 100, 159, 38, 65,
+            173, 69, 70, 146, 39, 94, 85, 47, 140, 163, 165, 125, 105, 213, 149, 59,
+            7, 88, 179, 64, 134, 172, 29, 247, 48, 55, 107, 228, 136, 217, 231, 137,
+            225, 27, 131, 73, 76, 63, 248, 254, 141, 83, 170, 144, 202, 216, 133, 97,
+            32, 113, 103, 164, 45, 43, 9, 91, 203, 155, 37, 208, 190, 229, 108, 82,
+            89, 166, 116, 210, 230, 244, 180, 192, 209, 102, 175, 194, 57, 75, 99, 182
+    };
+
+    // Матрица линейного преобразования l: строка A[63 - i] соответствует биту i слова
+    private static final long[] A = {
+            0x8e20faa72ba0b470L, 0x47107ddd9b505a38L, 0xad08b0e0c3282d1cL, 0xd8045870ef14980eL,
+            0x6c022c38f90a4c07L, 0x3601161cf205268dL, 0x1b8e0b0e798c13c8L, 0x83478b07b2468764L,
+            0xa011d380818e8f40L, 0x5086e740ce47c920L, 0x2843fd2067adea10L, 0x14aff010bdd87508L,
+            0x0ad97808d06cb404L, 0x05e23c0468365a02L, 0x8c711e02341b2d01L, 0x46b60f011a83988eL,
+            0x90dab52a387ae76fL, 0x486dd4151c3dfdb9L, 0x24b86a840e90f0d2L, 0x125c354207487869L,
+            0x092e94218d243cbaL, 0x8a174a9ec8121e5dL, 0x4585254f64090fa0L, 0xaccc9ca9328a8950L,
+            0x9d4df05d5f661451L, 0xc0a878a0a1330aa6L, 0x60543c50de970553L, 0x302a1e286fc58ca7L,
+            0x18150f14b9ec46ddL, 0x0c84890ad27623e0L, 0x0642ca05693b9f70L, 0x0321658cba93c138L,
+            0x86275df09ce8aaa8L, 0x439da0784e745554L, 0xafc0503c273aa42aL, 0xd960281e9d1d5215L,
+            0xe230140fc0802984L, 0x71180a8960409a42L, 0xb60c05ca30204d21L, 0x5b068c651810a89eL,
+            0x456c34887a3805b9L, 0xac361a443d1c8cd2L, 0x561b0d22900e4669L, 0x2b838811480723baL,
+            0x9bcf4486248d9f5dL, 0xc3e9224312c8c1a0L, 0xeffa11af0964ee50L, 0xf97d86d98a327728L,
+            0xe4fa2054a80b329cL, 0x727d102a548b194eL, 0x39b008152acb8227L, 0x9258048415eb419dL,
+            0x492c024284fbaec0L, 0xaa16012142f35760L, 0x550b8e9e21f7a530L, 0xa48b474f9ef5dc18L,
+            0x70a6a56e2440598eL, 0x3853dc371220a247L, 0x1ca76e95091051adL, 0x0edd37c48a08a6d8L,
+            0x07e095624504536cL, 0x8d70c431ac02a736L, 0xc83862965601dd1bL, 0x641c314b2b8ee083L
+    };
+
+    // Итерационные константы C1..C12
+    private static final long[][] C = {
+            {0xdd806559f2a64507L, 0x05767436cc744d23L, 0xa2422a08a460d315L, 0x4b7ce09192676901L,
+             0x714eb88d7585c4fcL, 0x2f6a76432e45d016L, 0xebcb2f81c0657c1fL, 0xb1085bda1ecadae9L},
+            {0xe679047021b19bb7L, 0x55dda21bd7cbcd56L, 0x5cb561c2db0aa7caL, 0x9ab5176b12d69958L,
+             0x61d55e0f16b50131L, 0xf3feea720a232b98L, 0x4fe39d460f70b5d7L, 0x6fa3b58aa99d2f1aL},
+            {0x991e96f50aba0ab2L, 0xc2b6f443867adb31L, 0xc1c93a376062db09L, 0xd3e20fe490359eb1L,
+             0xf2ea7514b1297b7bL, 0x06f15e5f529c1f8bL, 0x0a39fc286a3d8435L, 0xf574dcac2bce2fc7L},
+            {0x220cbebc84e3d12eL, 0x3453eaa193e837f1L, 0xd8b71333935203beL, 0xa9d72c82ed03d675L,
+             0x9d721cad685e353fL, 0x488e857e335c3c7dL, 0xf948e1a05d71e4ddL, 0xef1fdfb3e81566d2L},
+            {0x601758fd7c6cfe57L, 0x7a56a27ea9ea63f5L, 0xdfff00b723271a16L, 0xbfcd1747253af5a3L,
+             0x359e35d7800fffbdL, 0x7f151c1f1686104aL, 0x9a3f410c6ca92363L, 0x4bea6bacad474799L},
+            {0xfa68407a46647d6eL, 0xbf71c57236904f35L, 0x0af21f66c2bec6b6L, 0xcffaa6b71c9ab7b4L,
+             0x187f9ab49af08ec6L, 0x2d66c4f95142a46cL, 0x6fa4c33b7a3039c0L, 0xae4faeae1d3ad3d9L},
+            {0x8886564d3a14d493L, 0x3517454ca23c4af3L, 0x06476983284a0504L, 0x0992abc52d822c37L,
+             0xd3473e33197a93c9L, 0x399ec6c7e6bf87c9L, 0x51ac86febf240954L, 0xf4c70e16eeaac5ecL},
+            {0xa47f0dd4bf02e71eL, 0x36acc2355951a8d9L, 0x69d18d2bd1a5c42fL, 0xf4892bcb929b0690L,
+             0x89b4443b4ddbc49aL, 0x4eb7f8719c36de1eL, 0x03e7aa020c6e4141L, 0x9b1f5b424d93c9a7L},
+            {0x7261445183235adbL, 0x0e38dc92cb1f2a60L, 0x7b2b8a9aa6079c54L, 0x800a440bdbb2ceb1L,
+             0x3cd955b7e00d0984L, 0x3a7d3a1b25894224L, 0x944c9ad8ec165fdeL, 0x378f5a541631229bL},
+            {0x74b4c7fb98459cedL, 0x3698fad1153bb6c3L, 0x7a1e6c303b7652f4L, 0x9fe76702af69334bL,
+             0x1fffe18a1b336103L, 0x8941e71cff8a78dbL, 0x382ae548b2e4f3f3L, 0xabbedea680056f52L},
+            {0x6bcaa4cd81f32d1bL, 0xdea2594ac06fd85dL, 0xefbacd1d7d476e98L, 0x8a1d71efea48b9caL,
+             0x2001802114846679L, 0xd8fa6bbbebab0761L, 0x3002c6cd635afe94L, 0x7bcd9ed0efc889fbL},
+            {0x48bc924af11bd720L, 0xfaf417d5d9b21b99L, 0xe71da4aa88e12852L, 0x5d80ef9d1891cc86L,
+             0xf82012d430219f9bL, 0xcda43c32bcdf1d77L, 0xd21380b00449b17aL, 0x378ee767f11631baL}
+    };
+
+    private static final long[] ZERO = new long[8];
+
+    // LPS[j * 256 + b] - вклад байта b слова j в результат LPS (подстановка, перестановка и l вместе)
+    private static final long[] LPS = new long[8 * 256];
+
+    static {
+        for (int j = 0; j < 8; j++) {
+            for (int b = 0; b < 256; b++) {
+                long value = 0;
+                int p = PI[b];
+                for (int bit = 0; bit < 8; bit++) {
+                    if ((p >>> bit & 1) != 0) {
+                        value ^= A[63 - (8 * j + bit)];
+                    }
+                }
+                LPS[j << 8 | b] = value;
+            }
+        }
+    }
+
+    private final int digestSize;
+    private final long[] h = new long[8];
+    private final long[] n = new long[8];
+    private final long[] sigma = new long[8];
+    private final long[] k = new long[8];
+    private final long[] state = new long[8];
+    private final long[] m = new long[8];
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private int bufferLength;
+
+    /**
+     * @param digestSize размер хэша в байтах: 32 или 64
+     */
+    public StreebogDigest(int digestSize) {
+        if (digestSize != 32 && digestSize != 64) {
+            throw new IllegalArgumentException("Размер хэша ГОСТ Р 34.11-2012 должен быть 32 или 64 байта");
+        }
+        this.digestSize = digestSize;
+        reset();
+    }
+
+    public static StreebogDigest streebog256() {
+        return new StreebogDigest(32);
+    }
+
+    public static StreebogDigest streebog512() {
+        return new StreebogDigest(64);
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return digestSize == 32 ? "GOST3411-2012-256" : "GOST3411-2012-512";
+    }
+
+    @Override
+    public int getDigestSize() {
+        return digestSize;
+    }
+
+    @Override
+    public int getByteLength() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public void update(byte in) {
+        buffer[bufferLength++] = in;
+        if (bufferLength == BLOCK_SIZE) {
+            processBlock(buffer, 0);
+            bufferLength = 0;
+        }
+    }
+
+    @Override
+    public void update(byte[] in, int inOff, int len) {
+        if (bufferLength > 0) {
+            int take = Math.min(len, BLOCK_SIZE - bufferLength);
+            System.arraycopy(in, inOff, buffer, bufferLength, take);
+            bufferLength += take;
+            inOff += take;
+            len -= take;
+            if (bufferLength < BLOCK_SIZE) {
+                return;
+            }
+            processBlock(buffer, 0);
+            bufferLength = 0;
+        }
+        while (len >= BLOCK_SIZE) {
+            processBlock(in, inOff);
+            inOff += BLOCK_SIZE;
+            len -= BLOCK_SIZE;
+        }
+        System.arraycopy(in, inOff, buffer, 0, len);
+        bufferLength = len;
+    }
+
+    /**
+     * Хэширует оставшиеся байты буфера (от position до limit), позиция сдвигается в limit
+     */
+    public void update(ByteBuffer in) {
+        if (in.hasArray()) {
+            update(in.array(), in.arrayOffset() + in.position(), in.remaining());
+            in.position(in.limit());
+            return;
+        }
+        while (bufferLength > 0 && in.hasRemaining()) {
+            update(in.get());
+        }
+        boolean bigEndian = in.order() == ByteOrder.BIG_ENDIAN;
+        int position = in.position();
+        int limit = in.limit();
+        while (limit - position >= BLOCK_SIZE) {
+            for (int i = 0; i < 8; i++) {
+                long word = in.getLong(position + 8 * i);
+                m[i] = bigEndian ? Long.reverseBytes(word) : word;
+            }
+            processBlock(m);
+            position += BLOCK_SIZE;
+        }
+        in.position(position);
+        while (in.hasRemaining()) {
+            update(in.get());
+        }
+    }
+
+    @Override
+    public int doFinal(byte[] out, int outOff) {
+        Arrays.fill(buffer, bufferLength, BLOCK_SIZE, (byte) 0);
+        buffer[bufferLength] = 1;
+        for (int i = 0; i < 8; i++) {
+            m[i] = (long) LONGS.get(buffer, 8 * i);
+        }
+        compress(m, n);
+        add(n, bufferLength * 8L);
+        add(sigma, m);
+        compress(n, ZERO);
+        compress(sigma, ZERO);
+
+        // Хэш 256 бит - старшая половина состояния
+        int from = 8 - digestSize / 8;
+        for (int i = from; i < 8; i++) {
+            LONGS.set(out, outOff + 8 * (i - from), h[i]);
+        }
+        reset();
+        return digestSize;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(h, digestSize == 32 ? IV_256 : 0L);
+        Arrays.fill(n, 0L);
+        Arrays.fill(sigma, 0L);
+        Arrays.fill(buffer, (byte) 0);
+        bufferLength = 0;
+    }
+
+    private void processBlock(byte[] in, int inOff) {
+        for (int i = 0; i < 8; i++) {
+            m[i] = (long) LONGS.get(in, inOff + 8 * i);
+        }
+        processBlock(m);
+    }
+
+    private void processBlock(long[] block) {
+        compress(block, n);
+        add(n, BLOCK_SIZE * 8L);
+        add(sigma, block);
+    }
+
+    /**
+     * Функция сжатия g_N(h, m) = E(LPS(h ^ N), m) ^ h ^ m
+     */
+    private void compress(long[] message, long[] counter) {
+        lps(h, counter, k);
+        lps(k, message, state);
+        for (int i = 0; i < 11; i++) {
+            lps(k, C[i], k);
+            lps(state, k, state);
+        }
+        lps(k, C[11], k);
+        for (int i = 0; i < 8; i++) {
+            h[i] ^= state[i] ^ k[i] ^ message[i];
+        }
+    }
+
+    /**
+     * out = LPS(a ^ b); out может совпадать с a или b
+     */
+    private static void lps(long[] a, long[] b, long[] out) {
+        long x0 = a[0] ^ b[0];
+        long x1 = a[1] ^ b[1];
+        long x2 = a[2] ^ b[2];
+        long x3 = a[3] ^ b[3];
+        long x4 = a[4] ^ b[4];
+        long x5 = a[5] ^ b[5];
+        long x6 = a[6] ^ b[6];
+        long x7 = a[7] ^ b[7];
+        out[0] = LPS[(int) x0 & 0xFF]
+                ^ LPS[0x100 | (int) x1 & 0xFF]
+                ^ LPS[0x200 | (int) x2 & 0xFF]
+                ^ LPS[0x300 | (int) x3 & 0xFF]
+                ^ LPS[0x400 | (int) x4 & 0xFF]
+                ^ LPS[0x500 | (int) x5 & 0xFF]
+                ^ LPS[0x600 | (int) x6 & 0xFF]
+                ^ LPS[0x700 | (int) x7 & 0xFF];
+        out[1] = LPS[(int) (x0 >>> 8) & 0xFF]
+                ^ LPS[0x100 | (int) (x1 >>> 8) & 0xFF]
+                ^ LPS[0x200 | (int) (x2 >>> 8) & 0xFF]
+                ^ LPS[0x300 | (int) (x3 >>> 8) & 0xFF]
+                ^ LPS[0x400 | (int) (x4 >>> 8) & 0xFF]
+                ^ LPS[0x500 | (int) (x5 >>> 8) & 0xFF]
+                ^ LPS[0x600 | (int) (x6 >>> 8) & 0xFF]
+                ^ LPS[0x700 | (int) (x7 >>> 8) & 0xFF];
+        out[2] = LPS[(int) (x0 >>> 16) & 0xFF]
+                ^ LPS[0x100 | (int) (x1 >>> 16) & 0xFF]
+                ^ LPS[0x200 | (int) (x2 >>> 16) & 0xFF]
+                ^ LPS[0x300 | (int) (x3 >>> 16) & 0xFF]
+                ^ LPS[0x400 | (int) (x4 >>> 16) & 0xFF]
+                ^ LPS[0x500 | (int) (x5 >>> 16) & 0xFF]
+                ^ LPS[0x600 | (int) (x6 >>> 16) & 0xFF]
+                ^ LPS[0x700 | (int) (x7 >>> 16) & 0xFF];
+        out[3] = LPS[(int) (x0 >>> 24) & 0xFF]
+                ^ LPS[0x100 | (int) (x1 >>> 24) & 0xFF]
+                ^ LPS[0x200 | (int) (x2 >>> 24) & 0xFF]
+                ^ LPS[0x300 | (int) (x3 >>> 24) & 0xFF]
+                ^ LPS[0x400 | (int) (x4 >>> 24) & 0xFF]
+                ^ LPS[0x500 | (int) (x5 >>> 24) & 0xFF]
+                ^ LPS[0x600 | (int) (x6 >>> 24) & 0xFF]
+                ^ LPS[0x700 | (int) (x7 >>> 24) & 0xFF];
+        out[4] = LPS[(int) (x0 >>> 32) & 0xFF]
+                ^ LPS[0x100 | (int) (x1 >>> 32) & 0xFF]
+                ^ LPS[0x200 | (int) (x2 >>> 32) & 0xFF]
+                ^ LPS[0x300 | (int) (x3 >>> 32) & 0xFF]
+                ^ LPS[0x400 | (int) (x4 >>> 32) & 0xFF]
+                ^ LPS[0x500 | (int) (x5 >>> 32) & 0xFF]
+                ^ LPS[0x600 | (int) (x6 >>> 32) & 0xFF]
+                ^ LPS[0x700 | (int) (x7 >>> 32) & 0xFF];
+        out[5] = LPS[(int) (x0 >>> 40) & 0xFF]
+                ^ LPS[0x100 | (int) (x1 >>> 40) & 0xFF]
+                ^ LPS[0x200 | (int) (x2 >>> 40) & 0xFF]
+                ^ LPS[0x300 | (int) (x3 >>> 40) & 0xFF]
+                ^ LPS[0x400 | (int) (x4 >>> 40) & 0xFF]
+                ^ LPS[0x500 | (int) (x5 >>> 40) & 0xFF]
+                ^ LPS[0x600 | (int) (x6 >>> 40) & 0xFF]
+                ^ LPS[0x700 | (int) (x7 >>> 40) & 0xFF];
+        out[6] = LPS[(int) (x0 >>> 48) & 0xFF]
+                ^ LPS[0x100 | (int) (x1 >>> 48) & 0xFF]
+                ^ LPS[0x200 | (int) (x2 >>> 48) & 0xFF]
+                ^ LPS[0x300 | (int) (x3 >>> 48) & 0xFF]
+                ^ LPS[0x400 | (int) (x4 >>> 48) & 0xFF]
+                ^ LPS[0x500 | (int) (x5 >>> 48) & 0xFF]
+                ^ LPS[0x600 | (int) (x6 >>> 48) & 0xFF]
+                ^ LPS[0x700 | (int) (x7 >>> 48) & 0xFF];
+        out[7] = LPS[(int) (x0 >>> 56) & 0xFF]
+                ^ LPS[0x100 | (int) (x1 >>> 56) & 0xFF]
+                ^ LPS[0x200 | (int) (x2 >>> 56) & 0xFF]
+                ^ LPS[0x300 | (int) (x3 >>> 56) & 0xFF]
+                ^ LPS[0x400 | (int) (x4 >>> 56) & 0xFF]
+                ^ LPS[0x500 | (int) (x5 >>> 56) & 0xFF]
+                ^ LPS[0x600 | (int) (x6 >>> 56) & 0xFF]
+                ^ LPS[0x700 | (int) (x7 >>> 56) & 0xFF];
+    }
+
+    /**
+     * a = a + b mod 2^512
+     */
+    private static void add(long[] a, long[] b) {
+        long carry = 0;
+        for (int i = 0; i < 8; i++) {
+            long sum = a[i] + b[i];
+            long overflow = Long.compareUnsigned(sum, a[i]) < 0 ? 1 : 0;
+            long total = sum + carry;
+            overflow |= carry != 0 && total == 0 ? 1 : 0;
+            a[i] = total;
+            carry = overflow;
+        }
+    }
+
+    /**
+     * a = a + value mod 2^512 (value неотрицательно)
+     */
+    private static void add(long[] a, long value) {
+        long sum = a[0] + value;
+        boolean carry = Long.compareUnsigned(sum, a[0]) < 0;
+        a[0] = sum;
+        for (int i = 1; carry && i < 8; i++) {
+            carry = ++a[i] == 0;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.gostsign.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class AdmissionMetrics {
+    // Полоса: small или large
+    private String lane;
+    private int maxConcurrent;
+    private int inFlight;
+    private long admitted;
+    // Отклонено с 429
+    private long rejected;
+    // Переведено из полосы small после приема документа
+    private long promoted;
+    // Среднее время обработки запроса в полосе (скользящее)
+    private long averageMillis;
+    // Память под разбор PDF, зарезервированная запросами полосы, и общий бюджет
+    private long memoryReservedKb;
+    private long memoryBudgetKb;
+}
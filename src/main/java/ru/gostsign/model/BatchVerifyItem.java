@@ -0,0 +1,17 @@
+package ru.gostsign.model;
+
+import lombok.Data;
+
+/**
+ * Строка запроса пакетной проверки. Документ передается целиком (documentBase64)
+ * или хэшем ГОСТ Р 34.11-2012 (digestBase64); сертификат можно не указывать,
+ * если он общий для пакета и передан в заголовке X-Certificate
+ */
+@Data
+public class BatchVerifyItem {
+    private String id;
+    private String certificateBase64;
+    private String signatureBase64;
+    private String documentBase64;
+    private String digestBase64;
+}
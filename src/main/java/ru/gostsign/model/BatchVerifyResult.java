@@ -0,0 +1,14 @@
+package ru.gostsign.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BatchVerifyResult {
+    private String id;
+    private boolean signatureValid;
+    private boolean certificateValid;
+    // Причина, по которой элемент не удалось проверить; null при успешной проверке
+    private String error;
+}
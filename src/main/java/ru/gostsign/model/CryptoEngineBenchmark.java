@@ -0,0 +1,18 @@
+package ru.gostsign.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CryptoEngineBenchmark {
+    private String engine;
+    private String provider;
+    private boolean available;
+    // Причина, по которой бэкенд недоступен
+    private String error;
+    private boolean selected;
+    // Среднее время операции на этом хосте: генерация ключевой пары и выпуск самоподписанного сертификата
+    private long keyGenerationMicros;
+    private long certificateSignMicros;
+}
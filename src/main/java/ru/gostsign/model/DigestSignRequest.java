@@ -0,0 +1,16 @@
+package ru.gostsign.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Подписание заранее вычисленных хэшей ГОСТ Р 34.11-2012 (256 бит).
+ * Хэш передается в Base64 в том порядке байтов, в каком его возвращает GOST3411-2012-256
+ */
+@Data
+public class DigestSignRequest {
+    private String privateKeyBase64;
+    private String keyHandle;
+    private List<String> digestsBase64;
+}
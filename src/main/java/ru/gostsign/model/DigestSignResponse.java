@@ -0,0 +1,15 @@
+package ru.gostsign.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Подписи ГОСТ Р 34.10-2012 (Base64) в порядке переданных хэшей
+ */
+@Data
+@AllArgsConstructor
+public class DigestSignResponse {
+    private List<String> signaturesBase64;
+}
@@ -0,0 +1,15 @@
+package ru.gostsign.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Проверка подписей по хэшам: i-я подпись проверяется над i-м хэшем
+ */
+@Data
+public class DigestVerificationRequest {
+    private String certificateBase64;
+    private List<String> digestsBase64;
+    private List<String> signaturesBase64;
+}
@@ -0,0 +1,15 @@
+package ru.gostsign.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class DigestVerificationResult {
+    // Результат проверки каждой подписи в порядке запроса
+    private List<Boolean> signaturesValid;
+    private boolean certificateValid;
+    private String message;
+}
@@ -5,6 +5,8 @@ import lombok.Data;
 @Data
 public class DocumentSignRequest {
     private String privateKeyBase64;
+    // Дескриптор ключа из /api/keys; если указан, privateKeyBase64 не нужен
+    private String keyHandle;
     private String certificateBase64;
     private byte[] documentBytes;
     
@@ -0,0 +1,36 @@
+package ru.gostsign.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class JobStatus {
+    private String id;
+    // Операция: sign-document-with-signature или add-stamp
+    private String operation;
+    private State state;
+    // Текущий этап: stamping, saving, signing
+    private String stage;
+    private int pagesDone;
+    private int pagesTotal;
+    // Готовность в процентах по страницам штампа
+    private int percent;
+    private String error;
+    private Instant createdAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    // После этого момента задание и результат удаляются
+    private Instant expiresAt;
+    private long resultSize;
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+}
@@ -0,0 +1,8 @@
+package ru.gostsign.model;
+
+import lombok.Data;
+
+@Data
+public class KeyImportRequest {
+    private String privateKeyBase64;
+}
@@ -0,0 +1,11 @@
+package ru.gostsign.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class KeyImportResponse {
+    // Непрозрачный дескриптор для поля keyHandle запросов подписи
+    private String keyHandle;
+}
@@ -0,0 +1,19 @@
+package ru.gostsign.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class KeyPoolMetrics {
+    private String paramSet;
+    private int capacity;
+    // Готовых пар в пуле
+    private int depth;
+    private long hits;
+    private long misses;
+    private long generated;
+    // Пар в секунду, сгенерированных фоновым потоком за последнюю минуту
+    private double refillRatePerSecond;
+    private long averageGenerationMicros;
+}
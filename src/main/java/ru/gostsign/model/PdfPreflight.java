@@ -0,0 +1,29 @@
+package ru.gostsign.model;
+
+import lombok.Data;
+
+@Data
+public class PdfPreflight {
+    // Версия из заголовка, например 1.7
+    private String version;
+    private long size;
+    // -1, если каталог или дерево страниц прочитать не удалось
+    private int pageCount = -1;
+    // Используемые объекты по таблицам ссылок; -1, если таблицы не прочитаны
+    private int objectCount = -1;
+    // Инкрементальные обновления поверх исходного документа
+    private int incrementalUpdates;
+    // Таблица ссылок в потоке (PDF 1.5+)
+    private boolean xrefStream;
+    private boolean linearized;
+    private boolean encrypted;
+    // Для открытия нужен пароль пользователя или сертификат
+    private boolean passwordRequired;
+    // Заполненные поля подписей в AcroForm
+    private int signatureCount;
+    // Найдены startxref и %%EOF: файл передан целиком; null - startxref не найден в окне поиска
+    private Boolean complete;
+    // Что не удалось прочитать; null, если структура разобрана полностью
+    private String problem;
+    private long scanMicros;
+}
@@ -0,0 +1,210 @@
+package ru.gostsign.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import ru.gostsign.model.AdmissionMetrics;
+import ru.gostsign.model.PdfPreflight;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Допуск запросов с документами по оценке их стоимости.
+ * Запрос попадает в полосу небольших документов (small) или крупных (large) со своими пределами
+ * одновременных запросов, поэтому один PDF на 200 МБ не вытесняет поток одностраничных документов.
+ * Полоса выбирается по Content-Length до чтения тела ({@link #admit}) и уточняется по размеру, формату
+ * и числу страниц принятого документа ({@link Lease#probe}); тогда же по числу объектов PDF в общем бюджете
+ * резервируется память под его разбор. Если место не освобождается за queue-timeout, запрос отклоняется с 429 и Retry-After
+ * до начала работы над документом
+ */
+@Service
+public class AdmissionControl {
+    // Атрибут запроса с допуском, выданным AdmissionFilter
+    public static final String LEASE_ATTRIBUTE = "ru.gostsign.admission.lease";
+
+    // Куча PDFBox на load + save по замерам: ~512 КБ, 2 размера файла и ~1,5 КБ на объект из таблиц ссылок;
+    // если таблицы не прочитаны - до 15 размеров файла (документы из множества мелких объектов)
+    private static final long BASE_BYTES = 512 * 1024;
+    private static final long SIZE_FACTOR = 2;
+    private static final long OBJECT_BYTES = 1536;
+    private static final long UNKNOWN_OBJECTS_SIZE_FACTOR = 15;
+
+    @Value("${gostsign.admission.small.max-bytes:2MB}")
+    private DataSize smallMaxBytes;
+    @Value("${gostsign.admission.small.max-pages:50}")
+    private int smallMaxPages;
+    // 0 - четыре запроса на ядро
+    @Value("${gostsign.admission.small.max-concurrent:0}")
+    private int smallMaxConcurrent;
+    // 0 - половина ядер, но не меньше одного запроса
+    @Value("${gostsign.admission.large.max-concurrent:0}")
+    private int largeMaxConcurrent;
+    @Value("${gostsign.admission.queue-timeout:2s}")
+    private Duration queueTimeout;
+    // 0 - половина максимального размера кучи
+    @Value("${gostsign.admission.memory-budget:0}")
+    private DataSize memoryBudget;
+
+    @Autowired
+    private PdfPreflightScanner preflightScanner;
+
+    private Lane small;
+    private Lane large;
+    private Semaphore memory;
+    private int memoryBudgetKb;
+
+    @PostConstruct
+    void init() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        small = new Lane("small", smallMaxConcurrent > 0 ? smallMaxConcurrent : cores * 4);
+        large = new Lane("large", largeMaxConcurrent > 0 ? largeMaxConcurrent : Math.max(1, cores / 2));
+        long budgetBytes = memoryBudget.toBytes() > 0 ? memoryBudget.toBytes() : Runtime.getRuntime().maxMemory() / 2;
+        memoryBudgetKb = (int) Math.min(Integer.MAX_VALUE, budgetBytes / 1024);
+        memory = new Semaphore(memoryBudgetKb);
+        System.out.println("Допуск документов: small - " + small.maxConcurrent + ", large - " + large.maxConcurrent
+                + " одновременно, бюджет памяти " + memoryBudgetKb / 1024 + " МБ");
+    }
+
+    /**
+     * Допуск по длине тела запроса (-1 - неизвестна, запрос считается крупным).
+     * Ждет место в полосе не дольше queue-timeout, иначе {@link AdmissionRejectedException}
+     */
+    public Lease admit(long contentLength) {
+        Lane lane = contentLength >= 0 && contentLength <= smallMaxBytes.toBytes() ? small : large;
+        acquireSlot(lane);
+        return new Lease(lane);
+    }
+
+    public List<AdmissionMetrics> getMetrics() {
+        return List.of(small.metrics(memoryBudgetKb), large.metrics(memoryBudgetKb));
+    }
+
+    private void acquireSlot(Lane lane) {
+        if (!tryAcquire(lane.slots, 1)) {
+            lane.rejected.incrementAndGet();
+            throw new AdmissionRejectedException("Нет свободного места для обработки документа ("
+                    + lane.name + "), повторите позже", lane.retryAfterSeconds());
+        }
+        lane.admitted.incrementAndGet();
+    }
+
+    private boolean tryAcquire(Semaphore semaphore, int permits) {
+        try {
+            return semaphore.tryAcquire(permits, queueTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Оценка кучи на разбор документа в КБ; документы не в формате PDF хэшируются потоком
+     */
+    private static long estimateMemoryKb(SpooledDocument document, PdfPreflight preflight) {
+        if (preflight == null) {
+            return 0;
+        }
+        long bytes = preflight.getObjectCount() >= 0
+                ? BASE_BYTES + document.getSize() * SIZE_FACTOR + preflight.getObjectCount() * OBJECT_BYTES
+                : document.getSize() * UNKNOWN_OBJECTS_SIZE_FACTOR;
+        return (bytes + 1023) / 1024;
+    }
+
+    /**
+     * Допуск одного запроса: место в полосе и зарезервированная память. Освобождается один раз
+     */
+    public final class Lease {
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile Lane lane;
+        private volatile int memoryKb;
+
+        private Lease(Lane lane) {
+            this.lane = lane;
+        }
+
+        /**
+         * Уточняет допуск по принятому документу: PDF проходит предварительную проверку структуры
+         * ({@link PdfPreflightScanner#check}, поврежденный отклоняется с 400), крупный документ переводится
+         * в полосу large, под разбор PDF резервируется память. Документ, не помещающийся в бюджет целиком,
+         * отклоняется с 413
+         */
+        public void probe(SpooledDocument document) {
+            PdfPreflight preflight = document.isPdf() ? preflightScanner.check(document) : null;
+            int pages = preflight != null ? preflight.getPageCount() : 0;
+            long estimateKb = estimateMemoryKb(document, preflight);
+            if (estimateKb > memoryBudgetKb) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Документ слишком велик для обработки: нужно около "
+                        + estimateKb / 1024 + " МБ памяти при бюджете " + memoryBudgetKb / 1024 + " МБ");
+            }
+            if (lane == small && (document.getSize() > smallMaxBytes.toBytes() || pages > smallMaxPages)) {
+                acquireSlot(large);
+                large.promoted.incrementAndGet();
+                small.slots.release();
+                small.reservedKb.addAndGet(-memoryKb);
+                large.reservedKb.addAndGet(memoryKb);
+                lane = large;
+            }
+            int extraKb = (int) (estimateKb - memoryKb);
+            if (extraKb > 0) {
+                if (!tryAcquire(memory, extraKb)) {
+                    lane.rejected.incrementAndGet();
+                    throw new AdmissionRejectedException("Недостаточно памяти для обработки документа, повторите позже",
+                            lane.retryAfterSeconds());
+                }
+                memoryKb += extraKb;
+                lane.reservedKb.addAndGet(extraKb);
+            }
+        }
+
+        public void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            memory.release(memoryKb);
+            lane.reservedKb.addAndGet(-memoryKb);
+            lane.slots.release();
+            lane.record((System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+
+    private static final class Lane {
+        private final String name;
+        private final int maxConcurrent;
+        private final Semaphore slots;
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong promoted = new AtomicLong();
+        private final AtomicLong reservedKb = new AtomicLong();
+        // Скользящее среднее времени обработки, по нему считается Retry-After
+        private volatile double averageMillis;
+
+        Lane(String name, int maxConcurrent) {
+            this.name = name;
+            this.maxConcurrent = maxConcurrent;
+            this.slots = new Semaphore(maxConcurrent);
+        }
+
+        synchronized void record(long millis) {
+            averageMillis = averageMillis == 0 ? millis : averageMillis * 0.8 + millis * 0.2;
+        }
+
+        long retryAfterSeconds() {
+            return Math.max(1, (long) Math.ceil(averageMillis / 1000));
+        }
+
+        AdmissionMetrics metrics(int memoryBudgetKb) {
+            return new AdmissionMetrics(name, maxConcurrent, maxConcurrent - slots.availablePermits(), admitted.get(),
+                    rejected.get(), promoted.get(), Math.round(averageMillis), reservedKb.get(), memoryBudgetKb);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package ru.gostsign.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.crypto.StreebogDigest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Пакетное подписание документов и хэшей одним ключом.
+ * Ключ разбирается один раз на пакет (или берется из реестра), хэширование и подпись выполняются в пуле cryptoExecutor,
+ * результаты пишутся в исходном порядке по мере готовности.
+ */
+@Service
+public class BatchSignService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Меньше стольких хэшей на поток дробить список нет смысла
+    private static final int MIN_DIGESTS_PER_TASK = 16;
+
+    @Autowired
+    @Qualifier("cryptoExecutor")
+    private ExecutorService cryptoExecutor;
+    @Autowired
+    private ObjectMapper objectMapper;
+    // Сколько документов может быть в обработке одновременно; 0 - четыре на поток пула
+    @Value("${gostsign.batch.window:0}")
+    private int window;
+    // Документы крупнее порога не буферизуются: хэш считается потоково при чтении архива
+    @Value("${gostsign.batch.max-buffered-entry:16MB}")
+    private DataSize maxBufferedEntry;
+    @Value("${gostsign.crypto.threads:0}")
+    private int threads;
+
+    /**
+     * Формат результата пакетного подписания
+     */
+    public enum Format {
+        // ZIP с файлами <имя>.sig (подпись в Base64)
+        ZIP,
+        // По строке JSON на документ: {"name": ..., "signatureBase64": ...} или {"name": ..., "error": ...}
+        NDJSON
+    }
+
+    /**
+     * Подписывает список хэшей, распределяя их по потокам пула.
+     * Подписи возвращаются в Base64 в порядке хэшей
+     */
+    public List<String> signDigests(ECKeyParameters privateKey, List<byte[]> digests) {
+        int poolSize = poolSize();
+        int chunkSize = Math.max(MIN_DIGESTS_PER_TASK, (digests.size() + poolSize - 1) / poolSize);
+        List<Future<List<String>>> chunks = new ArrayList<>();
+        for (int from = 0; from < digests.size(); from += chunkSize) {
+            List<byte[]> chunk = digests.subList(from, Math.min(from + chunkSize, digests.size()));
+            chunks.add(cryptoExecutor.submit(() -> {
+                List<String> signatures = new ArrayList<>(chunk.size());
+                for (byte[] digest : chunk) {
+                    signatures.add(Base64.getEncoder().encodeToString(GostPrehashSignature.sign(privateKey, digest)));
+                }
+                return signatures;
+            }));
+        }
+        List<String> signatures = new ArrayList<>(digests.size());
+        try {
+            for (Future<List<String>> chunk : chunks) {
+                signatures.addAll(await(chunk));
+            }
+        } finally {
+            cancel(chunks);
+        }
+        return signatures;
+    }
+
+    /**
+     * Подписывает все документы ZIP-архива, читая его потоком.
+     * Ошибка в отдельном документе не прерывает пакет - она попадает в результат этого документа
+     */
+    public void signArchive(ECKeyParameters privateKey, InputStream archive, OutputStream output, Format format) throws IOException {
+        int maxPending = window > 0 ? window : poolSize() * 4;
+        BatchWriter writer = format == Format.NDJSON ? new NdjsonWriter(output) : new ZipWriter(output);
+        Deque<Future<BatchItem>> pending = new ArrayDeque<>();
+
+        ZipArchiveInputStream zip = new ZipArchiveInputStream(archive);
+        ZipArchiveEntry entry;
+        try {
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                pending.add(submit(privateKey, entry.getName(), zip));
+                // Окно ограничивает число документов в памяти; порядок результатов сохраняется
+                while (pending.size() >= maxPending) {
+                    writer.write(await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                writer.write(await(pending.poll()));
+            }
+        } finally {
+            // Клиент отключился или архив поврежден: поставленные в пул документы больше не нужны
+            cancel(pending);
+        }
+        writer.finish();
+    }
+
+    /**
+     * Читает документ из архива и ставит хэширование и подпись в пул.
+     * Крупный документ хэшируется сразу при чтении, в пул уходит только подпись
+     */
+    private Future<BatchItem> submit(ECKeyParameters privateKey, String name, InputStream entryStream) throws IOException {
+        long limit = maxBufferedEntry.toBytes();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[BUFFER_SIZE];
+        StreebogDigest digest = null;
+        int n;
+        while ((n = entryStream.read(chunk)) != -1) {
+            if (digest == null && buffer.size() + n > limit) {
+                digest = StreebogDigest.streebog256();
+                byte[] buffered = buffer.toByteArray();
+                digest.update(buffered, 0, buffered.length);
+                buffer = null;
+            }
+            if (digest != null) {
+                digest.update(chunk, 0, n);
+            } else {
+                buffer.write(chunk, 0, n);
+            }
+        }
+        if (digest != null) {
+            byte[] hash = new byte[GostPrehashSignature.DIGEST_SIZE];
+            digest.doFinal(hash, 0);
+            return cryptoExecutor.submit(() -> signItem(privateKey, name, hash));
+        }
+        byte[] data = buffer.toByteArray();
+        return cryptoExecutor.submit(() -> signItem(privateKey, name, GostPrehashSignature.digest(data)));
+    }
+
+    private static BatchItem signItem(ECKeyParameters privateKey, String name, byte[] digest) {
+        try {
+            return new BatchItem(name, GostPrehashSignature.sign(privateKey, digest), null);
+        } catch (RuntimeException e) {
+            return new BatchItem(name, null, e.getMessage());
+        }
+    }
+
+    private int poolSize() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static void cancel(Collection<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Пакетное подписание прервано", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Ошибка при пакетном подписании: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Результат подписания одного документа
+     */
+    private static class BatchItem {
+        private final String name;
+        private final byte[] signature;
+        private final String error;
+
+        BatchItem(String name, byte[] signature, String error) {
+            this.name = name;
+            this.signature = signature;
+            this.error = error;
+        }
+    }
+
+    private interface BatchWriter {
+        void write(BatchItem item) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * ZIP: подпись документа в <имя>.sig, ошибка - в <имя>.error.txt
+     */
+    private static class ZipWriter implements BatchWriter {
+        private final ZipArchiveOutputStream zip;
+
+        ZipWriter(OutputStream output) {
+            this.zip = new ZipArchiveOutputStream(output);
+        }
+
+        @Override
+        public void write(BatchItem item) throws IOException {
+            if (item.signature != null) {
+                ZipPackaging.putEntry(zip, item.name + ".sig", Base64.getEncoder().encode(item.signature));
+            } else {
+                ZipPackaging.putEntry(zip, item.name + ".error.txt",
+                        ("Ошибка создания подписи: " + item.error).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            zip.finish();
+            zip.flush();
+        }
+    }
+
+    /**
+     * NDJSON: строка JSON на документ
+     */
+    private class NdjsonWriter implements BatchWriter {
+        private final OutputStream output;
+
+        NdjsonWriter(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(BatchItem item) throws IOException {
+            Map<String, String> line = new LinkedHashMap<>();
+            line.put("name", item.name);
+            if (item.signature != null) {
+                line.put("signatureBase64", Base64.getEncoder().encodeToString(item.signature));
+            } else {
+                line.put("error", item.error);
+            }
+            output.write(objectMapper.writeValueAsBytes(line));
+            output.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            output.flush();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.gostsign.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.model.BatchVerifyItem;
+import ru.gostsign.model.BatchVerifyResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Пакетная проверка подписей.
+ * Запрос и ответ - NDJSON (строка JSON на элемент). Строки разбираются и проверяются в пуле
+ * cryptoExecutor, результаты пишутся в порядке запроса; сертификаты берутся из CertificateCache,
+ * результаты проверки уже встречавшихся подписей - из VerificationResultCache.
+ * Ошибка или превышение времени на одном элементе дают строку с error и не задерживают остальные.
+ */
+@Service
+public class BatchVerifyService {
+    @Autowired
+    @Qualifier("cryptoExecutor")
+    private ExecutorService cryptoExecutor;
+    @Autowired
+    private CertificateCache certificateCache;
+    @Autowired
+    private VerificationResultCache verificationResultCache;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${gostsign.batch.window:0}")
+    private int window;
+    @Value("${gostsign.crypto.threads:0}")
+    private int threads;
+    // Время на проверку одного элемента с момента его чтения
+    @Value("${gostsign.verify-batch.item-timeout:10s}")
+    private Duration itemTimeout;
+
+    /**
+     * Проверяет элементы из NDJSON-потока и пишет результаты в NDJSON-поток
+     *
+     * @param defaultCertificateBase64 сертификат для элементов без certificateBase64 (может быть null)
+     */
+    public void verify(InputStream input, OutputStream output, String defaultCertificateBase64) throws IOException {
+        int maxPending = window > 0 ? window : poolSize() * 4;
+        Deque<PendingItem> pending = new ArrayDeque<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            String json = line;
+            String defaultId = String.valueOf(lineNumber);
+            Future<BatchVerifyResult> future = cryptoExecutor.submit(() -> verifyLine(json, defaultId, defaultCertificateBase64));
+            pending.add(new PendingItem(defaultId, future, System.nanoTime() + itemTimeout.toNanos()));
+            while (pending.size() >= maxPending) {
+                writeResult(output, await(pending.poll(), output));
+            }
+        }
+        while (!pending.isEmpty()) {
+            writeResult(output, await(pending.poll(), output));
+        }
+        output.flush();
+    }
+
+    private BatchVerifyResult verifyLine(String json, String defaultId, String defaultCertificateBase64) {
+        String id = defaultId;
+        try {
+            BatchVerifyItem item = objectMapper.readValue(json, BatchVerifyItem.class);
+            if (item.getId() != null) {
+                id = item.getId();
+            }
+            String certificateBase64 = item.getCertificateBase64() != null
+                    ? item.getCertificateBase64() : defaultCertificateBase64;
+            CertificateCache.CachedCertificate certificate = certificateCache.get(certificateBase64);
+
+            byte[] digest;
+            if (item.getDigestBase64() != null) {
+                digest = Base64.getDecoder().decode(item.getDigestBase64());
+            } else if (item.getDocumentBase64() != null) {
+                digest = GostPrehashSignature.digest(Base64.getDecoder().decode(item.getDocumentBase64()));
+            } else {
+                throw new IllegalArgumentException("Не передан документ или его хэш");
+            }
+            if (item.getSignatureBase64() == null) {
+                throw new IllegalArgumentException("Не передана подпись");
+            }
+            byte[] signature = Base64.getDecoder().decode(item.getSignatureBase64());
+            boolean isValid = verificationResultCache.verify(certificate, digest, signature);
+            return new BatchVerifyResult(id, isValid, certificate.isValidNow(), null);
+        } catch (Exception e) {
+            return new BatchVerifyResult(id, false, false, "Ошибка при проверке подписи: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ждет результат элемента не дольше оставшегося у него времени.
+     * Перед ожиданием сбрасывает уже записанные результаты клиенту
+     */
+    private BatchVerifyResult await(PendingItem item, OutputStream output) throws IOException {
+        if (!item.future.isDone()) {
+            output.flush();
+        }
+        try {
+            long remaining = item.deadline - System.nanoTime();
+            return item.future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            item.future.cancel(true);
+            return new BatchVerifyResult(item.id, false, false,
+                    "Превышено время проверки (" + itemTimeout.toMillis() + " мс)");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Пакетная проверка прервана", e);
+        } catch (ExecutionException e) {
+            return new BatchVerifyResult(item.id, false, false, "Ошибка при проверке подписи: " + e.getCause().getMessage());
+        }
+    }
+
+    private void writeResult(OutputStream output, BatchVerifyResult result) throws IOException {
+        output.write(objectMapper.writeValueAsBytes(result));
+        output.write('\n');
+    }
+
+    private int poolSize() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Элемент в обработке: номер строки на случай, если результат не будет получен
+     */
+    private static class PendingItem {
+        private final String id;
+        private final Future<BatchVerifyResult> future;
+        private final long deadline;
+
+        PendingItem(String id, Future<BatchVerifyResult> future, long deadline) {
+            this.id = id;
+            this.future = future;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package ru.gostsign.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.gostsign.crypto.CryptoContexts;
+import ru.gostsign.crypto.GostBatchVerifier;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.model.CacheMetrics;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Кэш разобранных сертификатов для проверки подписей.
+ * Ключ - SHA-256 от DER сертификата; в кэше лежат сам сертификат, открытый ключ,
+ * его параметры BC и срок действия, так что повторная проверка не разбирает X.509 заново.
+ */
+@Service
+public class CertificateCache {
+    @Value("${gostsign.certificates.max-size:10000}")
+    private long maxSize;
+    @Value("${gostsign.certificates.expire-after-access:1h}")
+    private Duration expireAfterAccess;
+
+    private Cache<ByteBuffer, CachedCertificate> certificates;
+
+    @PostConstruct
+    void init() {
+        certificates = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Сертификат из Base64 (DER); разбирается только при первом обращении
+     */
+    public CachedCertificate get(String certificateBase64) {
+        if (certificateBase64 == null || certificateBase64.isEmpty()) {
+            throw new IllegalArgumentException("Не указан сертификат");
+        }
+        byte[] certBytes = Base64.getDecoder().decode(certificateBase64);
+        byte[] fingerprint = fingerprint(certBytes);
+        return certificates.get(ByteBuffer.wrap(fingerprint), key -> parse(certBytes, fingerprint));
+    }
+
+    public CacheMetrics getMetrics() {
+        CacheStats stats = certificates.stats();
+        return new CacheMetrics("certificates", certificates.estimatedSize(), stats.hitCount(),
+                stats.missCount(), stats.hitRate(), stats.evictionCount());
+    }
+
+    private static CachedCertificate parse(byte[] certBytes, byte[] fingerprint) {
+        try {
+            X509Certificate certificate = CryptoContexts.parseCertificate(certBytes);
+            PublicKey publicKey = certificate.getPublicKey();
+            return new CachedCertificate(certificate, publicKey, GostPrehashSignature.publicKeyParameters(publicKey), fingerprint);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Ошибка при разборе сертификата: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] fingerprint(byte[] certBytes) {
+        return CryptoContexts.sha256(certBytes);
+    }
+
+    /**
+     * Разобранный сертификат с подготовленным открытым ключом
+     */
+    public static class CachedCertificate {
+        private final X509Certificate certificate;
+        private final PublicKey publicKey;
+        private final ECKeyParameters publicKeyParameters;
+        private final long notBefore;
+        private final long notAfter;
+        private final byte[] fingerprint;
+        // Проверки подписей этим ключом; на пороге для Q строится таблица гребенки
+        private final AtomicInteger verifications = new AtomicInteger();
+
+        CachedCertificate(X509Certificate certificate, PublicKey publicKey, ECKeyParameters publicKeyParameters,
+                          byte[] fingerprint) {
+            this.certificate = certificate;
+            this.publicKey = publicKey;
+            this.publicKeyParameters = publicKeyParameters;
+            this.fingerprint = fingerprint;
+            this.notBefore = certificate.getNotBefore().getTime();
+            this.notAfter = certificate.getNotAfter().getTime();
+        }
+
+        public X509Certificate getCertificate() {
+            return certificate;
+        }
+
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        public ECKeyParameters getPublicKeyParameters() {
+            return publicKeyParameters;
+        }
+
+        /**
+         * Учитывает проверку подписи ключом сертификата. Одиночные проверки часто повторяющегося ключа
+         * переходят на таблицу гребенки для Q (см. {@link GostBatchVerifier#promote})
+         */
+        public void recordVerification() {
+            if (verifications.incrementAndGet() == GostBatchVerifier.PROMOTE_THRESHOLD) {
+                GostBatchVerifier.promote((ECPublicKeyParameters) publicKeyParameters);
+            }
+        }
+
+        /**
+         * SHA-256 от DER сертификата
+         */
+        public byte[] getFingerprint() {
+            return fingerprint.clone();
+        }
+
+        /**
+         * Срок действия проверяется по сохраненным границам, без обращения к X509Certificate
+         */
+        public boolean isValidAt(Date date) {
+            long time = date.getTime();
+            return time >= notBefore && time <= notAfter;
+        }
+
+        public boolean isValidNow() {
+            return isValidAt(new Date());
+        }
+    }
+}
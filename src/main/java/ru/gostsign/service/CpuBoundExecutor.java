@@ -0,0 +1,75 @@
+package ru.gostsign.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Выполнение тяжелых по процессору операций обработчиков запросов (штамп, подпись, проверка).
+ * На виртуальном потоке (сборка с профилем java21) операция уходит в пул cpuExecutor размером с число ядер:
+ * виртуальный поток ждет результат, освободив поток-носитель, и носители остаются свободны для чтения
+ * тел запросов и записи ответов. На обычном потоке операция выполняется сразу, без передачи
+ */
+@Service
+public class CpuBoundExecutor {
+    // Thread.isVirtual() появился в Java 21; при сборке под Java 17 ищется во время выполнения
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    @Autowired
+    @Qualifier("cpuExecutor")
+    private ExecutorService cpuExecutor;
+
+    /**
+     * Выполняет операцию и возвращает ее результат; исключения операции пробрасываются без обертки
+     */
+    public <T> T call(Supplier<T> operation) {
+        if (!isVirtual(Thread.currentThread())) {
+            return operation.get();
+        }
+        Future<T> future = cpuExecutor.submit(operation::get);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Обработка запроса прервана", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup()
+                    .findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
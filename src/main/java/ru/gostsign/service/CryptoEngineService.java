@@ -0,0 +1,201 @@
+package ru.gostsign.service;
+
+import jakarta.annotation.PostConstruct;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.CertException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.gostsign.crypto.BcGostCryptoEngine;
+import ru.gostsign.crypto.CryptoContexts;
+import ru.gostsign.crypto.GostCryptoEngine;
+import ru.gostsign.crypto.GostProviders;
+import ru.gostsign.crypto.JcpGostCryptoEngine;
+import ru.gostsign.model.CacheMetrics;
+import ru.gostsign.model.CryptoEngineBenchmark;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Выбор криптографического бэкенда (BouncyCastle или КриптоПро JCP) для генерации ключей и подписи
+ * сертификатов, регистрация провайдеров. При старте каждый доступный бэкенд проходит короткий замер
+ * этих операций на этом хосте; в режиме auto выбирается бэкенд с меньшим суммарным временем.
+ * Если заданный бэкенд недоступен, используется BouncyCastle
+ */
+@Service
+public class CryptoEngineService {
+    public static final String AUTO = "auto";
+
+    private static final X500Name BENCHMARK_SUBJECT = new X500Name("CN=gostsign benchmark");
+
+    // bc, jcp или auto
+    @Value("${gostsign.crypto.engine:bc}")
+    private String configuredEngine;
+    @Value("${gostsign.crypto.self-benchmark:true}")
+    private boolean selfBenchmark;
+    @Value("${gostsign.crypto.benchmark-iterations:50}")
+    private int iterations;
+
+    private GostCryptoEngine engine;
+    private List<CryptoEngineBenchmark> benchmarks = Collections.emptyList();
+
+    @PostConstruct
+    void init() {
+        GostProviders.registerBouncyCastle();
+        String requested = configuredEngine.trim().toLowerCase(Locale.ROOT);
+        if (!AUTO.equals(requested) && !BcGostCryptoEngine.NAME.equals(requested)
+                && !JcpGostCryptoEngine.NAME.equals(requested)) {
+            throw new IllegalStateException("Неизвестный криптографический бэкенд: " + configuredEngine
+                    + " (допустимо: bc, jcp, auto)");
+        }
+
+        List<GostCryptoEngine> engines = new ArrayList<>();
+        engines.add(new BcGostCryptoEngine());
+        String jcpError = null;
+        // JCP загружается только если он может понадобиться
+        if (!BcGostCryptoEngine.NAME.equals(requested) || selfBenchmark) {
+            if (GostProviders.registerJcp()) {
+                engines.add(new JcpGostCryptoEngine());
+            } else {
+                jcpError = GostProviders.getJcpError();
+            }
+        }
+
+        List<CryptoEngineBenchmark> results = new ArrayList<>();
+        if (selfBenchmark || AUTO.equals(requested)) {
+            for (GostCryptoEngine candidate : engines) {
+                results.add(benchmark(candidate));
+            }
+            if (jcpError != null) {
+                results.add(new CryptoEngineBenchmark(JcpGostCryptoEngine.NAME, GostProviders.JCP, false, jcpError,
+                        false, 0, 0));
+            }
+        }
+
+        engine = select(requested, engines, results);
+        for (CryptoEngineBenchmark result : results) {
+            result.setSelected(result.getEngine().equals(engine.getName()));
+            print(result);
+        }
+        benchmarks = Collections.unmodifiableList(results);
+        System.out.println("Криптографический бэкенд: " + engine);
+    }
+
+    public GostCryptoEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Статистика пулов криптографических объектов: общих и выбранного бэкенда
+     */
+    public List<CacheMetrics> getContextMetrics() {
+        List<CacheMetrics> metrics = new ArrayList<>(CryptoContexts.getMetrics());
+        metrics.addAll(engine.getContextMetrics());
+        return metrics;
+    }
+
+    /**
+     * Результаты замера при старте (пусто, если замер отключен)
+     */
+    public List<CryptoEngineBenchmark> getBenchmarks() {
+        return benchmarks;
+    }
+
+    private GostCryptoEngine select(String requested, List<GostCryptoEngine> engines, List<CryptoEngineBenchmark> results) {
+        GostCryptoEngine fallback = engines.get(0);
+        if (AUTO.equals(requested)) {
+            CryptoEngineBenchmark fastest = null;
+            for (CryptoEngineBenchmark result : results) {
+                if (result.isAvailable() && (fastest == null
+                        || result.getKeyGenerationMicros() + result.getCertificateSignMicros()
+                        < fastest.getKeyGenerationMicros() + fastest.getCertificateSignMicros())) {
+                    fastest = result;
+                }
+            }
+            return fastest == null ? fallback : find(engines, fastest.getEngine());
+        }
+        GostCryptoEngine chosen = find(engines, requested);
+        CryptoEngineBenchmark result = results.stream()
+                .filter(r -> r.getEngine().equals(requested)).findFirst().orElse(null);
+        if (chosen == null || (result != null && !result.isAvailable())) {
+            System.err.println("Криптографический бэкенд " + requested + " недоступен"
+                    + (result != null && result.getError() != null ? " (" + result.getError() + ")" : "")
+                    + ", используется " + fallback.getName());
+            return fallback;
+        }
+        return chosen;
+    }
+
+    private static GostCryptoEngine find(List<GostCryptoEngine> engines, String name) {
+        for (GostCryptoEngine candidate : engines) {
+            if (candidate.getName().equals(name)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Замер генерации ключа и выпуска самоподписанного сертификата - операций, которые выполняет бэкенд;
+     * заодно проверяет, что подпись сертификата проверяется
+     */
+    private CryptoEngineBenchmark benchmark(GostCryptoEngine candidate) {
+        int count = Math.max(iterations, 1);
+        int warmup = Math.max(count / 5, 5);
+        try {
+            KeyPair keyPair = null;
+            for (int i = 0; i < warmup; i++) {
+                keyPair = candidate.generateKeyPair(GostKeyPairPool.DEFAULT_PARAM_SET);
+                X509CertificateHolder certificate = issueCertificate(candidate, keyPair);
+                if (!certificate.isSignatureValid(new JcaContentVerifierProviderBuilder().build(keyPair.getPublic()))) {
+                    throw new IllegalStateException("подпись сертификата не прошла проверку");
+                }
+            }
+
+            long started = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                keyPair = candidate.generateKeyPair(GostKeyPairPool.DEFAULT_PARAM_SET);
+            }
+            long keyGeneration = (System.nanoTime() - started) / count / 1000;
+
+            started = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                issueCertificate(candidate, keyPair);
+            }
+            long certificateSign = (System.nanoTime() - started) / count / 1000;
+
+            return new CryptoEngineBenchmark(candidate.getName(), candidate.getProviderName(), true, null, false,
+                    keyGeneration, certificateSign);
+        } catch (RuntimeException | OperatorCreationException | CertException e) {
+            return new CryptoEngineBenchmark(candidate.getName(), candidate.getProviderName(), false,
+                    e.getClass().getSimpleName() + ": " + e.getMessage(), false, 0, 0);
+        }
+    }
+
+    private static X509CertificateHolder issueCertificate(GostCryptoEngine candidate, KeyPair keyPair) {
+        long now = System.currentTimeMillis();
+        return new JcaX509v3CertificateBuilder(BENCHMARK_SUBJECT, BigInteger.valueOf(now), new Date(now),
+                new Date(now + 60_000), BENCHMARK_SUBJECT, keyPair.getPublic())
+                .build(candidate.contentSigner(keyPair.getPrivate()));
+    }
+
+    private static void print(CryptoEngineBenchmark result) {
+        if (!result.isAvailable()) {
+            System.out.println("Замер бэкенда " + result.getEngine() + ": недоступен - " + result.getError());
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT,
+                "Замер бэкенда %s (%s)%s: ключ %d мкс, сертификат %d мкс",
+                result.getEngine(), result.getProvider(), result.isSelected() ? " [выбран]" : "",
+                result.getKeyGenerationMicros(), result.getCertificateSignMicros()));
+    }
+}
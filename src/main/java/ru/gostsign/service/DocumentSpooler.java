@@ -0,0 +1,195 @@
+package ru.gostsign.service;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.crypto.StreebogDigest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Прием загружаемых документов.
+ * Тело запроса читается потоком: до порога документ копится в памяти, выше порога
+ * пишется во временный файл. Хэш ГОСТ Р 34.11-2012 считается по ходу приема.
+ */
+@Service
+public class DocumentSpooler {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = 4;
+    private static final String TEMP_PREFIX = "gostsign-upload-";
+
+    // Документы больше порога не держатся в куче
+    @Value("${gostsign.upload.memory-threshold:1MB}")
+    private DataSize memoryThreshold;
+    @Value("${gostsign.upload.max-size:512MB}")
+    private DataSize maxSize;
+    // Каталог временных файлов; пусто - системный java.io.tmpdir
+    @Value("${gostsign.upload.temp-dir:}")
+    private String tempDir;
+
+    /**
+     * Принимает документ из потока (тело application/octet-stream)
+     */
+    public SpooledDocument spool(InputStream input) {
+        StreebogDigest digest = StreebogDigest.streebog256();
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        byte[] header = new byte[0];
+        File file = null;
+        OutputStream fileOutput = null;
+        long size = 0;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                size += n;
+                checkSize(size);
+                digest.update(buffer, 0, n);
+                header = appendHeader(header, buffer, n);
+                if (fileOutput == null && memory.size() + n > memoryThreshold.toBytes()) {
+                    // Порог превышен - сбрасываем накопленное во временный файл и дальше пишем туда
+                    file = createTempFile();
+                    fileOutput = Files.newOutputStream(file.toPath());
+                    memory.writeTo(fileOutput);
+                    memory = null;
+                }
+                if (fileOutput != null) {
+                    fileOutput.write(buffer, 0, n);
+                } else {
+                    memory.write(buffer, 0, n);
+                }
+            }
+            if (fileOutput != null) {
+                fileOutput.close();
+                fileOutput = null;
+            }
+            return new SpooledDocument(file == null ? memory.toByteArray() : null, file, size, finish(digest), header);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(fileOutput);
+            deleteQuietly(file);
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new UncheckedIOException("Ошибка при приеме документа: " + e.getMessage(), (IOException) e);
+        }
+    }
+
+    /**
+     * Принимает документ из multipart-части.
+     * Крупная часть уже лежит во временном файле контейнера - она переносится, а не копируется
+     */
+    public SpooledDocument spool(MultipartFile multipartFile) {
+        if (multipartFile == null || multipartFile.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Не передан документ");
+        }
+        checkSize(multipartFile.getSize());
+        if (multipartFile.getSize() <= memoryThreshold.toBytes()) {
+            try (InputStream is = multipartFile.getInputStream()) {
+                return spool(is);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка при приеме документа: " + e.getMessage(), e);
+            }
+        }
+        File file = null;
+        try {
+            file = createTempFile();
+            multipartFile.transferTo(file);
+            byte[] header = new byte[0];
+            try (InputStream is = Files.newInputStream(file.toPath())) {
+                byte[] buffer = new byte[HEADER_SIZE];
+                int n;
+                while (header.length < HEADER_SIZE && (n = is.read(buffer, 0, HEADER_SIZE - header.length)) != -1) {
+                    header = appendHeader(header, buffer, n);
+                }
+            }
+            return new SpooledDocument(null, file, file.length(), GostPrehashSignature.digest(file.toPath()), header);
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw new UncheckedIOException("Ошибка при приеме документа: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Буфер для документа, который формирует сервер, с тем же порогом: до порога в памяти,
+     * выше - во временном файле. Файл (getFile() после close) удаляет вызывающий
+     */
+    public DeferredFileOutputStream buffer() {
+        File dir = null;
+        if (tempDir != null && !tempDir.isEmpty()) {
+            dir = new File(tempDir);
+            try {
+                Files.createDirectories(dir.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось создать каталог временных файлов: " + e.getMessage(), e);
+            }
+        }
+        return DeferredFileOutputStream.builder()
+                .setThreshold((int) Math.min(Integer.MAX_VALUE, memoryThreshold.toBytes()))
+                .setPrefix(TEMP_PREFIX)
+                .setSuffix(".bin")
+                .setDirectory(dir)
+                .get();
+    }
+
+    private void checkSize(long size) {
+        if (size > maxSize.toBytes()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Размер документа превышает " + maxSize.toMegabytes() + " МБ");
+        }
+    }
+
+    private File createTempFile() throws IOException {
+        if (tempDir == null || tempDir.isEmpty()) {
+            return Files.createTempFile(TEMP_PREFIX, ".bin").toFile();
+        }
+        File dir = new File(tempDir);
+        Files.createDirectories(dir.toPath());
+        return Files.createTempFile(dir.toPath(), TEMP_PREFIX, ".bin").toFile();
+    }
+
+    /**
+     * Сохраняет первые байты документа (сигнатуру формата)
+     */
+    private static byte[] appendHeader(byte[] header, byte[] buffer, int n) {
+        if (header.length >= HEADER_SIZE) {
+            return header;
+        }
+        int take = Math.min(HEADER_SIZE - header.length, n);
+        byte[] result = Arrays.copyOf(header, header.length + take);
+        System.arraycopy(buffer, 0, result, header.length, take);
+        return result;
+    }
+
+    private static byte[] finish(StreebogDigest digest) {
+        byte[] hash = new byte[digest.getDigestSize()];
+        digest.doFinal(hash, 0);
+        return hash;
+    }
+
+    private static void closeQuietly(OutputStream output) {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException ignored) {
+                // Файл все равно удаляется
+            }
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            System.err.println("Не удалось удалить временный файл " + file.getAbsolutePath());
+        }
+    }
+}
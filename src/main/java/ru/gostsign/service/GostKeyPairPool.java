@@ -0,0 +1,180 @@
+package ru.gostsign.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.gostsign.model.KeyPoolMetrics;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул заранее сгенерированных ключевых пар ГОСТ Р 34.10-2012.
+ * Фоновый поток с низким приоритетом держит для каждого набора параметров заданное число
+ * готовых пар и пополняет пул после выдачи. Каждая пара извлекается из очереди ровно один раз;
+ * если пул пуст, пара генерируется синхронно.
+ */
+@Service
+public class GostKeyPairPool {
+    public static final String DEFAULT_PARAM_SET = "Tc26-Gost-3410-12-256-paramSetA";
+
+    @Autowired
+    private CryptoEngineService cryptoEngineService;
+    // Готовых пар на набор параметров; 0 - пул отключен
+    @Value("${gostsign.keypool.size:16}")
+    private int size;
+    @Value("${gostsign.keypool.param-sets:" + DEFAULT_PARAM_SET + "}")
+    private List<String> paramSets;
+
+    private final Map<String, ParamSetPool> pools = new LinkedHashMap<>();
+    // Сигнал фоновому потоку: из пула взяли пару
+    private final Semaphore refillSignal = new Semaphore(0);
+    private volatile boolean running;
+    private Thread refillThread;
+
+    @PostConstruct
+    void start() {
+        for (String paramSet : paramSets) {
+            if (ECNamedCurveTable.getParameterSpec(paramSet) == null) {
+                throw new IllegalStateException("Неизвестный набор параметров ГОСТ: " + paramSet);
+            }
+            pools.put(paramSet, new ParamSetPool(paramSet, Math.max(size, 1)));
+        }
+        if (size <= 0) {
+            return;
+        }
+        running = true;
+        refillThread = new Thread(this::refillLoop, "gost-keypool-refill");
+        refillThread.setDaemon(true);
+        // Пополнение не должно отнимать процессор у обработки запросов
+        refillThread.setPriority(Thread.MIN_PRIORITY);
+        refillThread.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (refillThread != null) {
+            refillThread.interrupt();
+        }
+    }
+
+    /**
+     * Выдает новую ключевую пару; одна и та же пара никогда не выдается дважды
+     */
+    public KeyPair take(String paramSet) {
+        ParamSetPool pool = pools.get(paramSet);
+        if (pool == null) {
+            // Набор вне пула - обычная синхронная генерация
+            return generate(paramSet);
+        }
+        KeyPair keyPair = size > 0 ? pool.ready.poll() : null;
+        if (keyPair != null) {
+            pool.hits.incrementAndGet();
+        } else {
+            pool.misses.incrementAndGet();
+            keyPair = generate(paramSet);
+        }
+        refillSignal.release();
+        return keyPair;
+    }
+
+    public List<KeyPoolMetrics> getMetrics() {
+        List<KeyPoolMetrics> metrics = new ArrayList<>();
+        for (ParamSetPool pool : pools.values()) {
+            long generated = pool.generated.get();
+            metrics.add(new KeyPoolMetrics(pool.paramSet, size, pool.ready.size(), pool.hits.get(),
+                    pool.misses.get(), generated, pool.refillRate(),
+                    generated == 0 ? 0 : pool.generationNanos.get() / generated / 1000));
+        }
+        return metrics;
+    }
+
+    private void refillLoop() {
+        while (running) {
+            try {
+                boolean filled = true;
+                for (ParamSetPool pool : pools.values()) {
+                    if (pool.ready.remainingCapacity() > 0) {
+                        long started = System.nanoTime();
+                        KeyPair keyPair = generate(pool.paramSet);
+                        pool.recordGenerated(System.nanoTime() - started);
+                        pool.ready.offer(keyPair);
+                        filled &= pool.ready.remainingCapacity() == 0;
+                    }
+                }
+                if (filled) {
+                    refillSignal.drainPermits();
+                    refillSignal.tryAcquire(1, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка пополнения пула ключей: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private KeyPair generate(String paramSet) {
+        // Генератор кэшируется бэкендом для каждого потока
+        return cryptoEngineService.getEngine().generateKeyPair(paramSet);
+    }
+
+    /**
+     * Очередь готовых пар и счетчики одного набора параметров
+     */
+    private static class ParamSetPool {
+        private static final long RATE_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+        private final String paramSet;
+        private final BlockingQueue<KeyPair> ready;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong generated = new AtomicLong();
+        private final AtomicLong generationNanos = new AtomicLong();
+        // Скорость пополнения за последнее окно (пар в секунду); окно ведет только фоновый поток
+        private long windowStart = System.nanoTime();
+        private long windowCount;
+        private volatile double lastRate;
+
+        ParamSetPool(String paramSet, int capacity) {
+            this.paramSet = paramSet;
+            this.ready = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void recordGenerated(long nanos) {
+            generated.incrementAndGet();
+            generationNanos.addAndGet(nanos);
+            windowCount++;
+            long now = System.nanoTime();
+            if (now - windowStart >= RATE_WINDOW_NANOS) {
+                lastRate = windowCount * 1e9 / (now - windowStart);
+                windowStart = now;
+                windowCount = 0;
+            }
+        }
+
+        double refillRate() {
+            long elapsed = System.nanoTime() - windowStart;
+            // Пока первое окно не закрыто, оцениваем по текущему
+            return lastRate > 0 || elapsed <= 0 ? lastRate : windowCount * 1e9 / elapsed;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package ru.gostsign.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.gostsign.crypto.GostCurves;
+import ru.gostsign.crypto.GostNonce;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.model.KeyPoolMetrics;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул заранее вычисленных пар (k, r) для подписи ГОСТ Р 34.10-2012.
+ * Умножение kG не зависит от сообщения, поэтому фоновый поток с низким приоритетом вычисляет пары заранее,
+ * а подпись документа сводится к хэшу и нескольким операциям по модулю q.
+ * Каждая пара извлекается из очереди ровно один раз и дополнительно помечается использованной;
+ * если пул пуст или кривая ключа не в пуле, подпись вычисляется обычным способом
+ */
+@Service
+public class GostNoncePool {
+    // Готовых пар на набор параметров; 0 - пул отключен
+    @Value("${gostsign.nonces.size:64}")
+    private int size;
+    @Value("${gostsign.nonces.param-sets:" + GostKeyPairPool.DEFAULT_PARAM_SET + "}")
+    private List<String> paramSets;
+
+    private final List<CurvePool> pools = new ArrayList<>();
+    // Сигнал фоновому потоку: из пула взяли пару
+    private final Semaphore refillSignal = new Semaphore(0);
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean running;
+    private Thread refillThread;
+
+    @PostConstruct
+    void start() {
+        for (String paramSet : paramSets) {
+            ECDomainParameters domain = GostCurves.byName(paramSet);
+            if (domain == null) {
+                throw new IllegalStateException("Неизвестный набор параметров ГОСТ: " + paramSet);
+            }
+            // Наборы с общей кривой используют одни и те же пары
+            if (find(domain) == null) {
+                pools.add(new CurvePool(paramSet, domain, Math.max(size, 1)));
+            }
+        }
+        if (size <= 0) {
+            return;
+        }
+        running = true;
+        refillThread = new Thread(this::refillLoop, "gost-nonce-refill");
+        refillThread.setDaemon(true);
+        // Пополнение не должно отнимать процессор у обработки запросов
+        refillThread.setPriority(Thread.MIN_PRIORITY);
+        refillThread.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (refillThread != null) {
+            refillThread.interrupt();
+            try {
+                refillThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Невыданные k не остаются в памяти после остановки
+        for (CurvePool pool : pools) {
+            GostNonce nonce;
+            while ((nonce = pool.ready.poll()) != null) {
+                nonce.destroy();
+            }
+        }
+    }
+
+    /**
+     * Подпись хэша с заранее вычисленной парой (k, r), если она есть для кривой ключа
+     */
+    public byte[] sign(ECKeyParameters privateKey, byte[] digest) {
+        CurvePool pool = find(privateKey.getParameters());
+        if (pool == null) {
+            return GostPrehashSignature.sign(privateKey, digest);
+        }
+        GostNonce nonce = size > 0 ? pool.ready.poll() : null;
+        refillSignal.release();
+        if (nonce == null) {
+            pool.misses.incrementAndGet();
+            return GostPrehashSignature.sign(privateKey, digest);
+        }
+        pool.hits.incrementAndGet();
+        return GostPrehashSignature.sign(privateKey, digest, nonce);
+    }
+
+    public List<KeyPoolMetrics> getMetrics() {
+        List<KeyPoolMetrics> metrics = new ArrayList<>();
+        for (CurvePool pool : pools) {
+            long generated = pool.generated.get();
+            metrics.add(new KeyPoolMetrics(pool.paramSet, size, pool.ready.size(), pool.hits.get(),
+                    pool.misses.get(), generated, pool.refillRate(),
+                    generated == 0 ? 0 : pool.generationNanos.get() / generated / 1000));
+        }
+        return metrics;
+    }
+
+    private CurvePool find(ECDomainParameters domain) {
+        // Ключи из реестра и GostPrehashSignature уже приведены к общим параметрам GostCurves
+        for (CurvePool pool : pools) {
+            if (pool.domain == domain) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    private void refillLoop() {
+        while (running) {
+            try {
+                boolean filled = true;
+                for (CurvePool pool : pools) {
+                    if (pool.ready.remainingCapacity() > 0) {
+                        long started = System.nanoTime();
+                        GostNonce nonce = GostNonce.generate(pool.domain, random);
+                        pool.recordGenerated(System.nanoTime() - started);
+                        pool.ready.offer(nonce);
+                        filled &= pool.ready.remainingCapacity() == 0;
+                    }
+                }
+                if (filled) {
+                    refillSignal.drainPermits();
+                    refillSignal.tryAcquire(1, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка пополнения пула одноразовых значений: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Очередь готовых пар и счетчики одной кривой
+     */
+    private static class CurvePool {
+        private static final long RATE_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+        private final String paramSet;
+        private final ECDomainParameters domain;
+        private final BlockingQueue<GostNonce> ready;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong generated = new AtomicLong();
+        private final AtomicLong generationNanos = new AtomicLong();
+        // Скорость пополнения за последнее окно (пар в секунду); окно пишет фоновый поток,
+        // читает поток метрик - поэтому обращения к окну под монитором пула
+        private long windowStart = System.nanoTime();
+        private long windowCount;
+        private double lastRate;
+
+        CurvePool(String paramSet, ECDomainParameters domain, int capacity) {
+            this.paramSet = paramSet;
+            this.domain = domain;
+            this.ready = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void recordGenerated(long nanos) {
+            generated.incrementAndGet();
+            generationNanos.addAndGet(nanos);
+            synchronized (this) {
+                windowCount++;
+                long now = System.nanoTime();
+                if (now - windowStart >= RATE_WINDOW_NANOS) {
+                    lastRate = windowCount * 1e9 / (now - windowStart);
+                    windowStart = now;
+                    windowCount = 0;
+                }
+            }
+        }
+
+        synchronized double refillRate() {
+            long elapsed = System.nanoTime() - windowStart;
+            // Пока первое окно не закрыто, оцениваем по текущему
+            return lastRate > 0 || elapsed <= 0 ? lastRate : windowCount * 1e9 / elapsed;
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package ru.gostsign.service;
 
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x500.X500NameBuilder;
@@ -14,15 +24,13 @@ import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
-import org.bouncycastle.jce.ECNamedCurveTable;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.jce.spec.ECParameterSpec;
 import org.bouncycastle.operator.ContentSigner;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.gostsign.model.SignRequest;
 import ru.gostsign.model.StampField;
+import ru.gostsign.crypto.GostProviders;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 
 import java.awt.Color;
@@ -30,6 +38,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
@@ -37,24 +46,34 @@ import java.security.cert.X509Certificate;
 import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import java.util.Set;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType0Font;
 
 @Service
 public class GostSignService {
-    static {
-        Security.addProvider(new BouncyCastleProvider());
-    }
+    @Autowired
+    private StampImageCache stampImageCache;
+    @Autowired
+    private StampFontCache stampFontCache;
+    @Autowired
+    private GostKeyPairPool keyPairPool;
+    @Autowired
+    private CryptoEngineService cryptoEngineService;
+    // Инкрементальное сохранение: исходный PDF не переписывается, изменения дописываются в конец
+    @Value("${gostsign.stamp.incremental:true}")
+    private boolean incrementalStamping;
+
+    // Имя ресурса формы штампа на страницах
+    private static final String STAMP_XOBJECT_PREFIX = "GostStamp";
 
     public byte[] generateAndSign(SignRequest request) {
         try {
-            // 1. Генерация ключевой пары ГОСТ 34.10-2012 (256 бит) через BouncyCastle
-            KeyPairGenerator kpg = KeyPairGenerator.getInstance("ECGOST3410-2012", "BC");
-            ECParameterSpec ecSpec = ECNamedCurveTable.getParameterSpec("Tc26-Gost-3410-12-256-paramSetA");
-            kpg.initialize(ecSpec, new SecureRandom());
-            KeyPair keyPair = kpg.generateKeyPair();
+            // 1. Генерация ключевой пары ГОСТ 34.10-2012 (256 бит) выбранным криптографическим бэкендом
+            // Берется готовая пара из пула, генерация идет в фоне
+            KeyPair keyPair = keyPairPool.take(GostKeyPairPool.DEFAULT_PARAM_SET);
 
             // 2. Distinguished Name (DN) для сертификата
             X500NameBuilder nameBuilder = new X500NameBuilder(BCStyle.INSTANCE);
@@ -86,10 +105,9 @@ public class GostSignService {
             X509v3CertificateBuilder certBuilder = new JcaX509v3CertificateBuilder(
                     subject, serial, notBefore, notAfter, subject, keyPair.getPublic()
             );
-            ContentSigner signer = new JcaContentSignerBuilder("GOST3411WITHECGOST3410-2012-256")
-                    .setProvider("BC").build(keyPair.getPrivate());
+            ContentSigner signer = cryptoEngineService.getEngine().contentSigner(keyPair.getPrivate());
             X509Certificate cert = new JcaX509CertificateConverter()
-                    .setProvider("BC")
+                    .setProvider(GostProviders.BOUNCY_CASTLE)
                     .getCertificate(certBuilder.build(signer));
 
             // 4. Подписываем сообщение ГОСТ-алгоритмом через BouncyCastle
@@ -104,17 +122,12 @@ public class GostSignService {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(baos)) {
                 // Сертификат
-                zip.putArchiveEntry(new ZipArchiveEntry("certificate.cer"));
-                zip.write(cert.getEncoded());
-                zip.closeArchiveEntry();
+                ZipPackaging.putEntry(zip, "certificate.cer", cert.getEncoded());
                 // Приватный ключ (PKCS#8 DER)
-                byte[] pkcs8 = keyPair.getPrivate().getEncoded();
-                zip.putArchiveEntry(new ZipArchiveEntry("private_key.der"));
-                zip.write(pkcs8);
-                zip.closeArchiveEntry();
+                ZipPackaging.putEntry(zip, "private_key.der", keyPair.getPrivate().getEncoded());
             }
             return baos.toByteArray();
-        } catch (GeneralSecurityException | IOException | org.bouncycastle.operator.OperatorCreationException e) {
+        } catch (GeneralSecurityException | IOException e) {
             throw new RuntimeException("Ошибка при генерации подписи: " + e.getMessage(), e);
         }
     }
@@ -123,28 +136,105 @@ public class GostSignService {
      * Добавляет штамп с динамическими полями на все страницы PDF
      */
     public byte[] addStampToPdf(byte[] pdfBytes, SignRequest request) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(pdfBytes.length + 64 * 1024);
+        addStampToPdf(pdfBytes, request, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Добавляет штамп к PDF из памяти и пишет результат в поток
+     */
+    public void addStampToPdf(byte[] pdfBytes, SignRequest request, OutputStream output) throws IOException {
+        addStampToPdf(pdfBytes, request, output, ProgressListener.NONE);
+    }
+
+    /**
+     * Добавляет штамп к PDF из памяти, сообщая о каждой обработанной странице
+     */
+    public void addStampToPdf(byte[] pdfBytes, SignRequest request, OutputStream output,
+                              ProgressListener listener) throws IOException {
         System.out.println("Начинаем добавление штампа к PDF...");
         try (PDDocument document = PDDocument.load(pdfBytes)) {
-            System.out.println("PDF документ загружен, количество страниц: " + document.getNumberOfPages());
-            
-            // Загружаем изображение штампа
-            ClassPathResource stampResource = new ClassPathResource("stamp.png");
-            System.out.println("Путь к файлу штампа: " + stampResource.getFile().getAbsolutePath());
-            PDImageXObject stampImage = PDImageXObject.createFromFile(stampResource.getFile().getAbsolutePath(), document);
-            System.out.println("Изображение штампа загружено");
-            
-            // Координаты полей штампа
-            Map<String, StampField> stampFields = new HashMap<>();
-            stampFields.put("organizationName", new StampField("Название организации", 150, 48, 10, "#000000"));
-            stampFields.put("director", new StampField("Директор", 150, 37, 10, "#000000"));
-            stampFields.put("inn", new StampField("ИНН", 150, 24, 10, "#000000"));
-            stampFields.put("validityPeriod", new StampField("Срок действия", 150, 14, 10, "#000000"));
+            writeStampedDocument(document, request, output, listener);
+        }
+    }
+
+    /**
+     * Добавляет штамп к PDF из файла и пишет результат в поток.
+     * Потоки документа держатся во временном файле, а не в памяти
+     */
+    public void addStampToPdf(File pdfFile, SignRequest request, OutputStream output) throws IOException {
+        addStampToPdf(pdfFile, request, output, ProgressListener.NONE);
+    }
+
+    /**
+     * Добавляет штамп к PDF из файла, сообщая о каждой обработанной странице
+     */
+    public void addStampToPdf(File pdfFile, SignRequest request, OutputStream output,
+                              ProgressListener listener) throws IOException {
+        System.out.println("Начинаем добавление штампа к PDF из файла " + pdfFile.getName() + "...");
+        try (PDDocument document = PDDocument.load(pdfFile, MemoryUsageSetting.setupTempFileOnly())) {
+            writeStampedDocument(document, request, output, listener);
+        }
+    }
+
+    /**
+     * Наносит штамп и сохраняет документ.
+     * В инкрементальном режиме исходные байты копируются без изменений, а после них дописываются
+     * только новые объекты штампа и измененные словари страниц.
+     * PDFBox закрывает поток после сохранения, поэтому поток вызывающего (например, запись ZIP) защищен от закрытия
+     */
+    private void writeStampedDocument(PDDocument document, SignRequest request, OutputStream output,
+                                      ProgressListener listener) throws IOException {
+        int pages = document.getNumberOfPages();
+        System.out.println("PDF документ загружен, количество страниц: " + pages);
+        Set<COSDictionary> modifiedObjects = stampDocument(document, request, listener);
+        listener.onProgress(ProgressListener.SAVING, pages, pages);
+        OutputStream target = CloseShieldOutputStream.wrap(output);
+        if (incrementalStamping) {
+            document.saveIncremental(target, modifiedObjects);
+        } else {
+            document.save(target);
+        }
+    }
+
+    /**
+     * Рисует штамп на всех страницах и возвращает существующие (косвенные) словари, которые были изменены
+     */
+    Set<COSDictionary> stampDocument(PDDocument document, SignRequest request) throws IOException {
+        return stampDocument(document, request, ProgressListener.NONE);
+    }
+
+    private Set<COSDictionary> stampDocument(PDDocument document, SignRequest request,
+                                             ProgressListener listener) throws IOException {
+        // Встраиваем изображение штампа из кэша (PNG уже декодирован при старте)
+        PDImageXObject stampImage = stampImageCache.createImage(document);
+        // Шрифт с поддержкой кириллицы (разобран один раз, в документ попадает подмножество глифов)
+        PDFont font = stampFontCache.createFont(document);
+        
+        // Координаты полей штампа
+        Map<String, StampField> stampFields = new HashMap<>();
+        stampFields.put("organizationName", new StampField("Название организации", 150, 48, 10, "#000000"));
+        stampFields.put("director", new StampField("Директор", 150, 37, 10, "#000000"));
+        stampFields.put("inn", new StampField("ИНН", 150, 24, 10, "#000000"));
+        stampFields.put("validityPeriod", new StampField("Срок действия", 150, 14, 10, "#000000"));
+        
+        // Штамп рисуется один раз в Form XObject для каждого размера страницы. Дописываемые к страницам
+        // потоки содержимого тоже общие: страницы одного размера ссылаются на одни и те же объекты
+        Map<String, StampPlacement> placements = new HashMap<>();
+        COSStream saveStateStream = createContentStream(document, "q\n");
+        Set<COSDictionary> modifiedObjects = new HashSet<>();
+        int totalPages = document.getNumberOfPages();
+        int stampedPages = 0;
+        listener.onProgress(ProgressListener.STAMPING, 0, totalPages);
+        
+        // Добавляем штамп на каждую страницу
+        for (PDPage page : document.getPages()) {
+            PDRectangle pageSize = page.getMediaBox();
             
-            // Добавляем штамп на каждую страницу
-            for (int i = 0; i < document.getNumberOfPages(); i++) {
-                PDPage page = document.getPage(i);
-                PDRectangle pageSize = page.getMediaBox();
-                
+            String formKey = pageSize.getWidth() + "x" + pageSize.getHeight();
+            StampPlacement placement = placements.get(formKey);
+            if (placement == null) {
                 // Размеры штампа
                 float stampWidth = pageSize.getWidth() * 0.30f;
                 float stampHeight = stampWidth * stampImage.getHeight() / stampImage.getWidth();
@@ -153,27 +243,145 @@ public class GostSignService {
                 float stampX = pageSize.getWidth() - stampWidth - 20;
                 float stampY = 20;
                 
+                // Область формы - вся страница, чтобы длинный текст не обрезался по краю штампа
+                PDRectangle formBBox = new PDRectangle(-stampX, -stampY, pageSize.getWidth(), pageSize.getHeight());
+                PDFormXObject stampForm = createStampForm(document, stampImage, font, request, stampFields, formBBox, stampWidth, stampHeight);
+                COSName formName = COSName.getPDFName(STAMP_XOBJECT_PREFIX + (placements.size() + 1));
+                String content = String.format(Locale.ROOT, "Q\nq\n1 0 0 1 %.4f %.4f cm\n/%s Do\nQ\n",
+                        stampX, stampY, formName.getName());
+                placement = new StampPlacement(formName, stampForm, stampX, stampY, createContentStream(document, content));
+                placements.put(formKey, placement);
+            }
+            
+            PDResources resources = page.getResources();
+            if (resources == null) {
+                resources = new PDResources();
+                page.setResources(resources);
+            }
+            if (isStampNameFree(resources, placement)) {
+                resources.put(placement.name, placement.form);
+                appendContents(page, saveStateStream, placement.contentStream);
+            } else {
+                // Имя занято другим объектом страницы - пишем отдельный поток с уникальным именем ресурса
                 try (PDPageContentStream contentStream = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
-                    // Добавляем изображение штампа
-                    contentStream.drawImage(stampImage, stampX, stampY, stampWidth, stampHeight);
-                    
-                    // Добавляем динамические текстовые поля
-                    addDynamicTextFields(contentStream, document, request, stampFields, stampX, stampY, stampWidth, stampHeight);
+                    contentStream.saveGraphicsState();
+                    contentStream.transform(Matrix.getTranslateInstance(placement.x, placement.y));
+                    contentStream.drawForm(placement.form);
+                    contentStream.restoreGraphicsState();
                 }
             }
+            collectModifiedObjects(page, modifiedObjects);
+            listener.onProgress(ProgressListener.STAMPING, ++stampedPages, totalPages);
+        }
+        return modifiedObjects;
+    }
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            document.save(baos);
-            return baos.toByteArray();
+    /**
+     * Дописывает к содержимому страницы общие потоки: сохранение графического состояния в начале
+     * и вывод штампа в конце
+     */
+    private void appendContents(PDPage page, COSStream saveStateStream, COSStream stampStream) {
+        COSDictionary pageDict = page.getCOSObject();
+        COSArray contents = new COSArray();
+        contents.add(saveStateStream);
+        COSBase existing = pageDict.getDictionaryObject(COSName.CONTENTS);
+        if (existing instanceof COSArray) {
+            contents.addAll((COSArray) existing);
+        } else if (existing != null) {
+            contents.add(pageDict.getItem(COSName.CONTENTS));
+        }
+        contents.add(stampStream);
+        pageDict.setItem(COSName.CONTENTS, contents);
+    }
+
+    /**
+     * Проверяет, что имя формы штампа в ресурсах страницы свободно или уже указывает на эту форму
+     * (ресурсы могут быть общими для нескольких страниц)
+     */
+    private boolean isStampNameFree(PDResources resources, StampPlacement placement) {
+        COSDictionary xObjects = resources.getCOSObject().getCOSDictionary(COSName.XOBJECT);
+        if (xObjects == null) {
+            return true;
+        }
+        COSBase existing = xObjects.getDictionaryObject(placement.name);
+        return existing == null || existing == placement.form.getCOSObject();
+    }
+
+    private COSStream createContentStream(PDDocument document, String content) throws IOException {
+        COSStream stream = document.getDocument().createCOSStream();
+        try (OutputStream os = stream.createOutputStream()) {
+            os.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        return stream;
+    }
+
+    /**
+     * Собирает косвенные словари, затронутые добавлением штампа на страницу:
+     * саму страницу (новый массив /Contents), словарь ресурсов и словарь /XObject.
+     * Прямые словари записываются вместе с владельцем, новые объекты - автоматически
+     */
+    private void collectModifiedObjects(PDPage page, Set<COSDictionary> modifiedObjects) {
+        COSDictionary pageDict = page.getCOSObject();
+        modifiedObjects.add(pageDict);
+        
+        // Ресурсы могут быть унаследованы от родительского узла дерева страниц
+        COSDictionary owner = pageDict;
+        while (owner != null && owner.getItem(COSName.RESOURCES) == null) {
+            owner = owner.getCOSDictionary(COSName.PARENT);
         }
+        if (owner == null) {
+            return;
+        }
+        COSDictionary resources = resolveForUpdate(owner, COSName.RESOURCES, modifiedObjects);
+        if (resources != null) {
+            resolveForUpdate(resources, COSName.XOBJECT, modifiedObjects);
+        }
+    }
+
+    /**
+     * Возвращает вложенный словарь и отмечает для записи тот объект, в котором он физически хранится:
+     * сам словарь, если он косвенный, иначе его владельца
+     */
+    private COSDictionary resolveForUpdate(COSDictionary parent, COSName key, Set<COSDictionary> modifiedObjects) {
+        COSBase item = parent.getItem(key);
+        COSBase value = item instanceof COSObject ? ((COSObject) item).getObject() : item;
+        if (!(value instanceof COSDictionary)) {
+            return null;
+        }
+        if (item instanceof COSObject) {
+            modifiedObjects.add((COSDictionary) value);
+        } else {
+            // Прямой словарь пишем внутри владельца, а не отдельным новым объектом
+            value.setDirect(true);
+            modifiedObjects.add(parent);
+        }
+        return (COSDictionary) value;
+    }
+
+    /**
+     * Рисует штамп (изображение и текстовые поля) в Form XObject с началом координат в углу штампа
+     */
+    private PDFormXObject createStampForm(PDDocument document, PDImageXObject stampImage, PDFont font, SignRequest request,
+                                          Map<String, StampField> stampFields, PDRectangle bBox,
+                                          float stampWidth, float stampHeight) throws IOException {
+        PDFormXObject form = new PDFormXObject(document);
+        form.setBBox(bBox);
+        form.setResources(new PDResources());
+        try (PDPageContentStream contentStream = new PDPageContentStream(document, form,
+                form.getContentStream().createOutputStream(COSName.FLATE_DECODE))) {
+            // Добавляем изображение штампа
+            contentStream.drawImage(stampImage, 0, 0, stampWidth, stampHeight);
+            
+            // Добавляем динамические текстовые поля
+            addDynamicTextFields(contentStream, font, request, stampFields, 0, 0, stampWidth, stampHeight);
+        }
+        return form;
     }
 
-    private void addDynamicTextFields(PDPageContentStream contentStream, PDDocument document, SignRequest request, 
+    private void addDynamicTextFields(PDPageContentStream contentStream, PDFont font, SignRequest request, 
                                     Map<String, StampField> stampFields, float stampX, float stampY, 
                                     float stampWidth, float stampHeight) throws IOException {
         
-        // Устанавливаем шрифт Times New Roman с поддержкой кириллицы
-        PDFont font = getTimesNewRomanFont(document);
         // Цвет текста #1b1564
         java.awt.Color stampColor = new java.awt.Color(27, 21, 100);
         
@@ -231,30 +439,22 @@ public class GostSignService {
         }
     }
 
-    private PDFont getTimesNewRomanFont(PDDocument document) throws IOException {
-        try {
-            // Пытаемся загрузить Times New Roman из системных шрифтов Windows
-            System.out.println("Пытаемся загрузить Times New Roman из C:/Windows/Fonts/times.ttf");
-            return PDType0Font.load(document, new File("C:/Windows/Fonts/times.ttf"));
-        } catch (Exception e) {
-            System.err.println("Ошибка загрузки times.ttf: " + e.getMessage());
-            try {
-                // Альтернативный вариант - Times New Roman Bold
-                System.out.println("Пытаемся загрузить Times New Roman Bold из C:/Windows/Fonts/timesbd.ttf");
-                return PDType0Font.load(document, new File("C:/Windows/Fonts/timesbd.ttf"));
-            } catch (Exception e2) {
-                System.err.println("Ошибка загрузки timesbd.ttf: " + e2.getMessage());
-                try {
-                    // Еще один вариант - Times New Roman Italic
-                    System.out.println("Пытаемся загрузить Times New Roman Italic из C:/Windows/Fonts/timesi.ttf");
-                    return PDType0Font.load(document, new File("C:/Windows/Fonts/timesi.ttf"));
-                } catch (Exception e3) {
-                    System.err.println("Ошибка загрузки timesi.ttf: " + e3.getMessage());
-                    // Если ничего не получилось, используем стандартный шрифт
-                    System.err.println("Не удалось загрузить Times New Roman, используем Helvetica");
-                    return PDType1Font.HELVETICA;
-                }
-            }
+    /**
+     * Штамп для страниц одного размера: форма, ее имя в ресурсах и общий поток вывода
+     */
+    private static class StampPlacement {
+        private final COSName name;
+        private final PDFormXObject form;
+        private final float x;
+        private final float y;
+        private final COSStream contentStream;
+
+        StampPlacement(COSName name, PDFormXObject form, float x, float y, COSStream contentStream) {
+            this.name = name;
+            this.form = form;
+            this.x = x;
+            this.y = y;
+            this.contentStream = contentStream;
         }
     }
-} 
\ No newline at end of file
+}
@@ -1,61 +1,81 @@
 package ru.gostsign.service;
 
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.crypto.params.ECKeyParameters;
 import org.bouncycastle.asn1.x500.X500NameBuilder;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
-import org.bouncycastle.jce.ECNamedCurveTable;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.jce.spec.ECParameterSpec;
 import org.bouncycastle.operator.ContentSigner;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.springframework.stereotype.Service;
 import ru.gostsign.model.SignRequest;
+import ru.gostsign.model.DigestSignRequest;
+import ru.gostsign.model.DigestSignResponse;
+import ru.gostsign.model.DigestVerificationRequest;
+import ru.gostsign.model.DigestVerificationResult;
+import ru.gostsign.model.KeyImportRequest;
+import ru.gostsign.model.KeyImportResponse;
 import ru.gostsign.model.DocumentSignRequest;
 import ru.gostsign.model.VerificationRequest;
 import ru.gostsign.model.VerificationResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.crypto.GostProviders;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 @Service
 public class GostSignatureService {
     @Autowired
     private PdfSignService pdfSignService;
-    
-    // Храним последнюю сгенерированную ключевую пару для тестирования
-    private KeyPair lastGeneratedKeyPair;
-    
-    static {
-        Security.addProvider(new BouncyCastleProvider());
-    }
+    @Autowired
+    private PdfBoxGostSignService pdfBoxGostSignService;
+    @Autowired
+    private PdfPreflightScanner preflightScanner;
+    @Autowired
+    private BatchSignService batchSignService;
+    @Autowired
+    private KeyRegistry keyRegistry;
+    @Autowired
+    private CertificateCache certificateCache;
+    @Autowired
+    private VerificationResultCache verificationResultCache;
+    @Autowired
+    private GostKeyPairPool keyPairPool;
+    @Autowired
+    private CryptoEngineService cryptoEngineService;
+    @Autowired
+    private GostNoncePool noncePool;
+    // Ограничение на количество хэшей в одном запросе подписи/проверки по хэшу
+    @Value("${gostsign.digest.max-per-request:1000}")
+    private int maxDigestsPerRequest;
 
     /**
-     * 1. Создание подписи - генерирует ключевую пару и сертификат
+     * 1. Создание подписи - генерирует ключевую пару и сертификат и пишет ZIP архив в поток.
+     * Ключ и сертификат создаются до начала записи, поэтому ошибка возвращается обычным статусом
      */
-    public byte[] createSignature(SignRequest request) {
+    public void createSignature(SignRequest request, OutputStream output) {
         try {
             // Генерация ключевой пары ГОСТ 34.10-2012 (256 бит)
-            KeyPairGenerator kpg = KeyPairGenerator.getInstance("ECGOST3410-2012", "BC");
-            ECParameterSpec ecSpec = ECNamedCurveTable.getParameterSpec("Tc26-Gost-3410-12-256-paramSetA");
-            kpg.initialize(ecSpec, new SecureRandom());
-            KeyPair keyPair = kpg.generateKeyPair();
-            
-            // Сохраняем ключевую пару для последующего использования
-            this.lastGeneratedKeyPair = keyPair;
+            // Берется готовая пара из пула, генерация идет в фоне
+            KeyPair keyPair = keyPairPool.take(GostKeyPairPool.DEFAULT_PARAM_SET);
 
             // Distinguished Name (DN) для сертификата
             X500NameBuilder nameBuilder = new X500NameBuilder(BCStyle.INSTANCE);
@@ -87,53 +107,73 @@ public class GostSignatureService {
             X509v3CertificateBuilder certBuilder = new JcaX509v3CertificateBuilder(
                     subject, serial, notBefore, notAfter, subject, keyPair.getPublic()
             );
-            ContentSigner signer = new JcaContentSignerBuilder("GOST3411WITHECGOST3410-2012-256")
-                    .setProvider("BC").build(keyPair.getPrivate());
+            ContentSigner signer = cryptoEngineService.getEngine().contentSigner(keyPair.getPrivate());
             X509Certificate cert = new JcaX509CertificateConverter()
-                    .setProvider("BC")
+                    .setProvider(GostProviders.BOUNCY_CASTLE)
                     .getCertificate(certBuilder.build(signer));
 
             // Архивируем сертификат и ключ
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(baos)) {
-                // Сертификат
-                zip.putArchiveEntry(new ZipArchiveEntry("certificate.cer"));
-                zip.write(cert.getEncoded());
-                zip.closeArchiveEntry();
-                // Приватный ключ (PKCS#8 DER)
-                byte[] pkcs8 = keyPair.getPrivate().getEncoded();
-                zip.putArchiveEntry(new ZipArchiveEntry("private_key.der"));
-                zip.write(pkcs8);
-                zip.closeArchiveEntry();
+            byte[] certificateBytes = cert.getEncoded();
+            ZipArchiveOutputStream zip = new ZipArchiveOutputStream(output);
+            // Сертификат
+            ZipPackaging.putEntry(zip, "certificate.cer", certificateBytes);
+            // Приватный ключ (PKCS#8 DER)
+            ZipPackaging.putEntry(zip, "private_key.der", keyPair.getPrivate().getEncoded());
+            // Ключ регистрируется, только когда сертификат выпущен и ключ уже отдан клиенту,
+            // чтобы подписывать по дескриптору без повторной передачи ключа
+            String keyHandle = keyRegistry.register(keyPair.getPrivate());
+            try {
+                // Дескриптор ключа в реестре (поле keyHandle запросов подписи)
+                ZipPackaging.putEntry(zip, "key_handle.txt", keyHandle.getBytes(StandardCharsets.US_ASCII));
+                zip.finish();
+            } catch (IOException | RuntimeException e) {
+                // Архив не дошел до клиента - дескриптор никому не нужен
+                keyRegistry.remove(keyHandle);
+                throw e;
             }
-            return baos.toByteArray();
-        } catch (GeneralSecurityException | IOException | org.bouncycastle.operator.OperatorCreationException e) {
+        } catch (GeneralSecurityException | IOException e) {
             throw new RuntimeException("Ошибка при создании подписи: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Получение последнего сгенерированного приватного ключа в Base64
+     * Импорт приватного ключа в реестр; дальше ключ передается дескриптором
      */
-    public String getLastPrivateKeyBase64() {
-        if (lastGeneratedKeyPair != null) {
-            return Base64.getEncoder().encodeToString(lastGeneratedKeyPair.getPrivate().getEncoded());
+    public KeyImportResponse importKey(KeyImportRequest request) {
+        try {
+            return new KeyImportResponse(keyRegistry.importKey(request.getPrivateKeyBase64()));
+        } catch (Exception e) {
+            throw new RuntimeException("Ошибка при импорте ключа: " + e.getMessage(), e);
         }
-        return null;
+    }
+
+    /**
+     * Удаление ключа из реестра
+     */
+    public void removeKey(String keyHandle) {
+        keyRegistry.remove(keyHandle);
     }
 
     /**
      * 2. Подписание документа - подписывает предоставленный документ
      */
     public byte[] signDocument(DocumentSignRequest request) {
+        return signDocument(request, SpooledDocument.of(request.getDocumentBytes()));
+    }
+
+    /**
+     * 2. Подписание документа, принятого потоком (multipart или application/octet-stream)
+     */
+    public byte[] signDocument(DocumentSignRequest request, SpooledDocument document) {
+        checkPdf(document);
         try {
             // Проверяем, является ли документ PDF
-            if (isPdfDocument(request.getDocumentBytes())) {
+            if (document.isPdf()) {
                 // Подписываем PDF с штампом и логотипом
-                return pdfSignService.signPdfDocument(request);
+                return pdfSignService.signPdfDocument(request, document);
             } else {
                 // Обычное подписание документа
-                return signRegularDocument(request);
+                return signRegularDocument(request, document);
             }
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при подписании документа: " + e.getMessage(), e);
@@ -141,32 +181,100 @@ public class GostSignatureService {
     }
 
     /**
-     * 2a. Подписание документа с возвратом PDF с штампом и отдельной подписи
+     * 2a. Подписание документа с записью ZIP архива (PDF с штампом и отдельная подпись) в поток
+     */
+    public void signDocumentWithSignature(DocumentSignRequest request, OutputStream output) {
+        signDocumentWithSignature(request, SpooledDocument.of(request.getDocumentBytes()), output);
+    }
+
+    /**
+     * 2a. Подписание документа, принятого потоком; ZIP архив пишется в поток по мере формирования
+     */
+    public void signDocumentWithSignature(DocumentSignRequest request, SpooledDocument document, OutputStream output) {
+        signDocumentWithSignature(request, document, output, ProgressListener.NONE);
+    }
+
+    /**
+     * 2a. То же с отчетом о ходе операции (асинхронные задания)
      */
-    public byte[] signDocumentWithSignature(DocumentSignRequest request) {
+    public void signDocumentWithSignature(DocumentSignRequest request, SpooledDocument document, OutputStream output,
+                                          ProgressListener listener) {
+        checkPdf(document);
         try {
             // Проверяем, является ли документ PDF
-            if (isPdfDocument(request.getDocumentBytes())) {
-                // Подписываем PDF с штампом и возвращаем ZIP с PDF и подписью
-                return pdfSignService.signPdfDocumentWithSignature(request);
+            if (document.isPdf()) {
+                // Подписываем PDF с штампом и пишем ZIP с PDF и подписью
+                pdfSignService.signPdfDocumentWithSignature(request, document, output, listener);
             } else {
                 // Обычное подписание документа
-                return signRegularDocumentWithSignature(request);
+                listener.onProgress(ProgressListener.SIGNING, 0, 0);
+                signRegularDocumentWithSignature(request, document, output);
             }
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при подписании документа: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 2c. Подписание PDF встроенной CMS-подписью ГОСТ (штамп и подпись в одном инкрементальном обновлении)
+     */
+    public byte[] signDocumentEmbedded(DocumentSignRequest request) {
+        return signDocumentEmbedded(request, SpooledDocument.of(request.getDocumentBytes()));
+    }
+
+    /**
+     * 2c. Встроенная подпись PDF, уже принятого сервером (разбор из допуска запроса используется повторно)
+     */
+    public byte[] signDocumentEmbedded(DocumentSignRequest request, SpooledDocument document) {
+        if (!document.isPdf()) {
+            throw new RuntimeException("Встроенная подпись поддерживается только для PDF документов");
+        }
+        preflightScanner.check(document);
+        if (document.isInMemory()) {
+            return pdfBoxGostSignService.signPdfWithGost(document.getBytes(), request);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfBoxGostSignService.signPdfWithGost(document.getFile(), request, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * 2c. Встроенная подпись PDF, принятого потоком, с записью результата в поток.
+     * Документ во временном файле разбирается PDFBox без загрузки в кучу
+     */
+    public void signDocumentEmbedded(DocumentSignRequest request, SpooledDocument document, OutputStream output) {
+        if (!document.isPdf()) {
+            throw new IllegalArgumentException("Встроенная подпись поддерживается только для PDF документов");
+        }
+        preflightScanner.check(document);
+        if (!document.isInMemory()) {
+            pdfBoxGostSignService.signPdfWithGost(document.getFile(), request, output);
+            return;
+        }
+        try {
+            output.write(pdfBoxGostSignService.signPdfWithGost(document.getBytes(), request));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при записи подписанного PDF: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * 2b. Добавление штампа к документу (без подписи)
      */
     public byte[] addStampToDocument(DocumentSignRequest request) {
+        return addStampToDocument(request, SpooledDocument.of(request.getDocumentBytes()));
+    }
+
+    /**
+     * 2b. Добавление штампа к документу, принятому потоком
+     */
+    public byte[] addStampToDocument(DocumentSignRequest request, SpooledDocument document) {
+        checkPdf(document);
         try {
             // Проверяем, является ли документ PDF
-            if (isPdfDocument(request.getDocumentBytes())) {
+            if (document.isPdf()) {
                 // Добавляем только штамп к PDF
-                return pdfSignService.addStampToPdfOnly(request);
+                return pdfSignService.addStampToPdfOnly(request, document);
             } else {
                 throw new RuntimeException("Добавление штампа поддерживается только для PDF документов");
             }
@@ -176,80 +284,129 @@ public class GostSignatureService {
     }
 
     /**
-     * Подписание обычного документа (не PDF)
+     * 2b. Добавление штампа с записью PDF в поток и отчетом о каждой странице (асинхронные задания)
      */
-    private byte[] signRegularDocument(DocumentSignRequest request) throws Exception {
-        // Декодируем приватный ключ
-        byte[] privateKeyBytes = Base64.getDecoder().decode(request.getPrivateKeyBase64());
-        KeyFactory keyFactory = KeyFactory.getInstance("ECGOST3410-2012", "BC");
-        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
-        PrivateKey privateKey = keyFactory.generatePrivate(keySpec);
+    public void addStampToDocument(DocumentSignRequest request, SpooledDocument document, OutputStream output,
+                                   ProgressListener listener) {
+        if (!document.isPdf()) {
+            throw new IllegalArgumentException("Добавление штампа поддерживается только для PDF документов");
+        }
+        preflightScanner.check(document);
+        pdfSignService.addStampToPdfOnly(request, document, output, listener);
+    }
+
+    /**
+     * Подписание обычного документа (не PDF).
+     * Подписывается хэш, вычисленный при приеме документа; формат подписи тот же,
+     * что у GOST3411WITHECGOST3410-2012-256
+     */
+    private byte[] signRegularDocument(DocumentSignRequest request, SpooledDocument document) throws Exception {
+        // Ключ из реестра по дескриптору или из запроса
+        ECKeyParameters privateKey = keyRegistry.resolveKeyParameters(request.getKeyHandle(), request.getPrivateKeyBase64());
 
         // Создаем подпись документа
-        Signature signature = Signature.getInstance("GOST3411WITHECGOST3410-2012-256", "BC");
-        signature.initSign(privateKey);
-        signature.update(request.getDocumentBytes());
-        byte[] signatureBytes = signature.sign();
+        byte[] signatureBytes = noncePool.sign(privateKey, document.getDigest());
 
         // Возвращаем подпись в Base64
         return Base64.getEncoder().encode(signatureBytes);
     }
 
     /**
-     * Подписание обычного документа с возвратом ZIP архива
+     * Подписание обычного документа с записью ZIP архива в поток.
+     * Подпись считается по хэшу, вычисленному при приеме, поэтому документ копируется в архив один раз
      */
-    private byte[] signRegularDocumentWithSignature(DocumentSignRequest request) throws Exception {
-        // Декодируем приватный ключ
-        byte[] privateKeyBytes = Base64.getDecoder().decode(request.getPrivateKeyBase64());
-        KeyFactory keyFactory = KeyFactory.getInstance("ECGOST3410-2012", "BC");
-        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
-        PrivateKey privateKey = keyFactory.generatePrivate(keySpec);
+    private void signRegularDocumentWithSignature(DocumentSignRequest request, SpooledDocument document,
+                                                  OutputStream output) throws Exception {
+        // Ключ из реестра по дескриптору или из запроса
+        ECKeyParameters privateKey = keyRegistry.resolveKeyParameters(request.getKeyHandle(), request.getPrivateKeyBase64());
 
         // Создаем подпись документа
-        Signature signature = Signature.getInstance("GOST3411WITHECGOST3410-2012-256", "BC");
-        signature.initSign(privateKey);
-        signature.update(request.getDocumentBytes());
-        byte[] signatureBytes = signature.sign();
-
-        // Создаем ZIP архив с документом и подписью
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(baos)) {
-            // Оригинальный документ
-            zip.putArchiveEntry(new ZipArchiveEntry("document.bin"));
-            zip.write(request.getDocumentBytes());
-            zip.closeArchiveEntry();
-            
-            // Подпись в Base64
-            zip.putArchiveEntry(new ZipArchiveEntry("signature.txt"));
-            zip.write(Base64.getEncoder().encode(signatureBytes));
-            zip.closeArchiveEntry();
-            zip.finish(); // <--- добавлено
+        byte[] signatureBytes = noncePool.sign(privateKey, document.getDigest());
+
+        // ZIP архив с документом и подписью; поток ответа закрывает контейнер сервлетов
+        ZipArchiveOutputStream zip = new ZipArchiveOutputStream(output);
+        // Оригинальный документ
+        try (InputStream is = document.openStream()) {
+            ZipPackaging.putEntry(zip, "document.bin", is);
         }
-        return baos.toByteArray();
+
+        // Подпись в Base64
+        ZipPackaging.putEntry(zip, "signature.txt", Base64.getEncoder().encode(signatureBytes));
+        zip.finish();
     }
 
     /**
-     * Проверка, является ли документ PDF
+     * 2d. Подписание заранее вычисленных хэшей ГОСТ Р 34.11-2012 - документ на сервер не передается.
+     * Подпись совпадает по формату с подписью документа целиком (signDocument для не-PDF)
      */
-    private boolean isPdfDocument(byte[] documentBytes) {
-        if (documentBytes.length < 4) return false;
-        // PDF файлы начинаются с "%PDF"
-        return documentBytes[0] == 0x25 && documentBytes[1] == 0x50 && 
-               documentBytes[2] == 0x44 && documentBytes[3] == 0x46;
+    public DigestSignResponse signDigests(DigestSignRequest request) {
+        try {
+            List<byte[]> digests = decodeDigests(request.getDigestsBase64());
+            // Ключ берется из реестра или декодируется один раз на весь список, подписи считаются параллельно
+            ECKeyParameters privateKey = keyRegistry.resolveKeyParameters(request.getKeyHandle(), request.getPrivateKeyBase64());
+            return new DigestSignResponse(batchSignService.signDigests(privateKey, digests));
+        } catch (Exception e) {
+            throw new RuntimeException("Ошибка при подписании хэша: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Декодирует и проверяет список хэшей из запроса
+     */
+    private List<byte[]> decodeDigests(List<String> digestsBase64) {
+        if (digestsBase64 == null || digestsBase64.isEmpty()) {
+            throw new IllegalArgumentException("Не переданы хэши документов");
+        }
+        if (digestsBase64.size() > maxDigestsPerRequest) {
+            throw new IllegalArgumentException("Слишком много хэшей в запросе: " + digestsBase64.size()
+                    + " (не более " + maxDigestsPerRequest + ")");
+        }
+        List<byte[]> digests = new ArrayList<>(digestsBase64.size());
+        for (int i = 0; i < digestsBase64.size(); i++) {
+            byte[] digest = Base64.getDecoder().decode(digestsBase64.get(i));
+            if (digest.length != GostPrehashSignature.DIGEST_SIZE) {
+                throw new IllegalArgumentException("Хэш №" + (i + 1) + " должен быть длиной "
+                        + GostPrehashSignature.DIGEST_SIZE + " байта, получено " + digest.length);
+            }
+            digests.add(digest);
+        }
+        return digests;
+    }
+
+    /**
+     * PDF перед разбором в PDFBox проходит предварительную проверку структуры:
+     * обрезанный или защищенный паролем документ отклоняется с 400, не дойдя до загрузки
+     */
+    private void checkPdf(SpooledDocument document) {
+        if (document.isPdf()) {
+            preflightScanner.check(document);
+        }
     }
 
     /**
      * 3. Проверка подписи и подписанного документа
      */
     public VerificationResult verifySignature(VerificationRequest request) {
+        try {
+            return verifySignature(request, SpooledDocument.of(request.getDocumentBytes()));
+        } catch (Exception e) {
+            return new VerificationResult(false, false,
+                "Ошибка при проверке подписи: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 3. Проверка подписи документа, принятого потоком
+     */
+    public VerificationResult verifySignature(VerificationRequest request, SpooledDocument document) {
         try {
             // Проверяем, является ли документ PDF
-            if (isPdfDocument(request.getDocumentBytes())) {
+            if (document.isPdf()) {
                 // Для PDF документов проверяем обычную подпись (так как подпись отдельная)
-                return verifyRegularSignature(request);
+                return verifyRegularSignature(request, document);
             } else {
                 // Проверяем обычную подпись
-                return verifyRegularSignature(request);
+                return verifyRegularSignature(request, document);
             }
         } catch (Exception e) {
             return new VerificationResult(false, false, 
@@ -260,29 +417,19 @@ public class GostSignatureService {
     /**
      * Проверка обычной подписи (не PDF)
      */
-    private VerificationResult verifyRegularSignature(VerificationRequest request) throws Exception {
-        // Декодируем сертификат
-        byte[] certBytes = Base64.getDecoder().decode(request.getCertificateBase64());
-        java.security.cert.CertificateFactory certFactory = java.security.cert.CertificateFactory.getInstance("X.509");
-        X509Certificate certificate = (X509Certificate) certFactory.generateCertificate(new java.io.ByteArrayInputStream(certBytes));
+    private VerificationResult verifyRegularSignature(VerificationRequest request, SpooledDocument document) throws Exception {
+        // Сертификат из кэша (разбирается только при первой проверке)
+        CertificateCache.CachedCertificate cached = certificateCache.get(request.getCertificateBase64());
+        X509Certificate certificate = cached.getCertificate();
 
         // Декодируем подпись
         byte[] signatureBytes = Base64.getDecoder().decode(request.getSignatureBase64());
 
-        // Проверяем подпись
-        Signature signature = Signature.getInstance("GOST3411WITHECGOST3410-2012-256", "BC");
-        signature.initVerify(certificate.getPublicKey());
-        signature.update(request.getDocumentBytes());
-        boolean isValid = signature.verify(signatureBytes);
+        // Проверяем подпись (повторная проверка той же подписи берется из кэша)
+        boolean isValid = verificationResultCache.verify(cached, document.getDigest(), signatureBytes);
 
         // Проверяем сертификат
-        boolean isCertificateValid = false;
-        try {
-            certificate.checkValidity();
-            isCertificateValid = true;
-        } catch (Exception e) {
-            // Сертификат недействителен
-        }
+        boolean isCertificateValid = cached.isValidNow();
 
         // Формируем понятное сообщение
         String message = buildVerificationMessage(isValid, isCertificateValid, certificate);
@@ -290,12 +437,48 @@ public class GostSignatureService {
         // Добавляем отладочную информацию
         System.out.println("DEBUG: Подпись валидна: " + isValid);
         System.out.println("DEBUG: Сертификат валиден: " + isCertificateValid);
-        System.out.println("DEBUG: Размер документа: " + request.getDocumentBytes().length + " байт");
+        System.out.println("DEBUG: Размер документа: " + document.getSize() + " байт");
         System.out.println("DEBUG: Размер подписи: " + signatureBytes.length + " байт");
         
         return new VerificationResult(isValid, isCertificateValid, message);
     }
 
+    /**
+     * 3a. Проверка подписей по хэшам ГОСТ Р 34.11-2012 без передачи документов
+     */
+    public DigestVerificationResult verifyDigests(DigestVerificationRequest request) {
+        try {
+            List<byte[]> digests = decodeDigests(request.getDigestsBase64());
+            List<String> signaturesBase64 = request.getSignaturesBase64();
+            if (signaturesBase64 == null || signaturesBase64.size() != digests.size()) {
+                throw new IllegalArgumentException("Количество подписей должно совпадать с количеством хэшей");
+            }
+
+            CertificateCache.CachedCertificate cached = certificateCache.get(request.getCertificateBase64());
+
+            List<byte[]> signatures = new ArrayList<>(signaturesBase64.size());
+            for (String signatureBase64 : signaturesBase64) {
+                signatures.add(Base64.getDecoder().decode(signatureBase64));
+            }
+            // Все подписи под одним сертификатом проверяются одним пакетом
+            boolean[] verified = verificationResultCache.verifyAll(cached, digests, signatures);
+
+            List<Boolean> results = new ArrayList<>(digests.size());
+            boolean allValid = true;
+            for (boolean isValid : verified) {
+                results.add(isValid);
+                allValid &= isValid;
+            }
+
+            boolean isCertificateValid = cached.isValidNow();
+            String message = buildVerificationMessage(allValid, isCertificateValid, cached.getCertificate());
+            return new DigestVerificationResult(results, isCertificateValid, message);
+        } catch (Exception e) {
+            return new DigestVerificationResult(Collections.emptyList(), false,
+                "Ошибка при проверке подписи: " + e.getMessage());
+        }
+    }
+
     /**
      * Формирование понятного сообщения о результате проверки
      */
@@ -0,0 +1,475 @@
+package ru.gostsign.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.gostsign.model.DocumentSignRequest;
+import ru.gostsign.model.JobStatus;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронные задания для длительных операций над крупными документами.
+ * Задание выполняется в ограниченном пуле jobExecutor, результат пишется в файл в каталоге заданий
+ * и хранится заданное время после завершения. Ход выполнения (страницы штампа, этап) доступен
+ * опросом состояния и событиями SSE. Описания заданий хранятся в памяти и не переживают перезапуск.
+ */
+@Service
+public class JobService {
+    private static final int ID_BYTES = 18;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String RESULT_SUFFIX = ".result";
+    private static final String PART_SUFFIX = ".part";
+
+    @Autowired
+    @Qualifier("jobExecutor")
+    private ExecutorService jobExecutor;
+    @Autowired
+    private GostSignatureService gostSignatureService;
+    @Autowired
+    private PdfPreflightScanner preflightScanner;
+    // Каталог результатов; пусто - временный каталог, удаляемый при остановке
+    @Value("${gostsign.jobs.dir:}")
+    private String directory;
+    // Сколько хранится завершенное задание и его результат
+    @Value("${gostsign.jobs.ttl:1h}")
+    private Duration ttl;
+    @Value("${gostsign.jobs.events-timeout:30m}")
+    private Duration eventsTimeout;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private Path storeDirectory;
+    private boolean temporaryDirectory;
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Операции, доступные в виде заданий
+     */
+    public enum Operation {
+        SIGN_DOCUMENT_WITH_SIGNATURE("sign-document-with-signature", "signed_document_with_signature.zip",
+                MediaType.APPLICATION_OCTET_STREAM),
+        ADD_STAMP("add-stamp", "document_with_stamp.pdf", MediaType.APPLICATION_PDF);
+
+        private final String path;
+        private final String fileName;
+        private final MediaType contentType;
+
+        Operation(String path, String fileName, MediaType contentType) {
+            this.path = path;
+            this.fileName = fileName;
+            this.contentType = contentType;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public MediaType getContentType() {
+            return contentType;
+        }
+
+        public static Operation fromPath(String path) {
+            for (Operation operation : values()) {
+                if (operation.path.equals(path)) {
+                    return operation;
+                }
+            }
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Неизвестная операция задания: " + path);
+        }
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (directory == null || directory.isEmpty()) {
+            storeDirectory = Files.createTempDirectory("gostsign-jobs-");
+            temporaryDirectory = true;
+        } else {
+            storeDirectory = Files.createDirectories(Paths.get(directory));
+            // Описания заданий прошлого запуска потеряны, их результаты уже не выдать
+            deleteStoredFiles();
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gost-job-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, Math.min(ttl.toSeconds(), 60));
+        sweeper.scheduleWithFixedDelay(this::removeExpired, period, period, TimeUnit.SECONDS);
+        System.out.println("Результаты заданий: " + storeDirectory.toAbsolutePath() + ", хранение " + ttl);
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+        if (temporaryDirectory) {
+            deleteStoredFiles();
+            try {
+                Files.deleteIfExists(storeDirectory);
+            } catch (IOException e) {
+                System.err.println("Не удалось удалить каталог заданий " + storeDirectory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ставит операцию в очередь. Задание становится владельцем документа и закрывает его по завершении.
+     * Если очередь заполнена, возвращается 429
+     */
+    public JobStatus submit(Operation operation, DocumentSignRequest request, SpooledDocument document) {
+        if (operation == Operation.ADD_STAMP && !document.isPdf()) {
+            document.close();
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Добавление штампа поддерживается только для PDF документов");
+        }
+        int pages = 0;
+        if (document.isPdf()) {
+            // Поврежденный или защищенный паролем PDF отклоняется сразу, а не ошибкой задания
+            try {
+                pages = Math.max(0, preflightScanner.check(document).getPageCount());
+            } catch (ResponseStatusException e) {
+                document.close();
+                throw e;
+            }
+        }
+        // Документ уже у SpooledDocument; массив из JSON в описании задания не нужен
+        request.setDocumentBytes(null);
+        Job job = new Job(newId(), operation, request, document);
+        job.pagesTotal = pages;
+        jobs.put(job.id, job);
+        try {
+            jobExecutor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            document.close();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Очередь заданий заполнена, повторите позже");
+        }
+        return job.status();
+    }
+
+    public JobStatus getStatus(String id) {
+        return find(id).status();
+    }
+
+    /**
+     * Файл результата завершенного задания; 409, если задание еще выполняется или завершилось ошибкой
+     */
+    public Path getResult(String id) {
+        Job job = find(id);
+        JobStatus status = job.status();
+        if (status.getState() != JobStatus.State.COMPLETED) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, status.getState() == JobStatus.State.FAILED
+                    ? "Задание завершилось ошибкой: " + status.getError()
+                    : "Задание еще не завершено");
+        }
+        return resultPath(job.id);
+    }
+
+    /**
+     * Подписка на ход задания: текущее состояние отправляется сразу, дальше - при смене этапа
+     * или процента готовности. Поток событий закрывается после завершения задания
+     */
+    public SseEmitter subscribe(String id) {
+        Job job = find(id);
+        SseEmitter emitter = new SseEmitter(eventsTimeout.toMillis());
+        emitter.onCompletion(() -> job.unsubscribe(emitter));
+        emitter.onTimeout(() -> job.unsubscribe(emitter));
+        emitter.onError(e -> job.unsubscribe(emitter));
+        JobStatus status = job.subscribe(emitter);
+        send(job, emitter, status);
+        if (isFinished(status.getState())) {
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    /**
+     * Отменяет задание (выполняемое - на следующей странице) и удаляет его результат
+     */
+    public void delete(String id) {
+        Job job = jobs.remove(id);
+        if (job == null) {
+            throw notFound();
+        }
+        job.cancel();
+        deleteQuietly(resultPath(id));
+    }
+
+    private void run(Job job) {
+        Path part = storeDirectory.resolve(job.id + PART_SUFFIX);
+        Path result = resultPath(job.id);
+        // Ключ и документ задание отдает исполнителю и дальше не хранит, пока ждет выдачи результата
+        DocumentSignRequest request = job.request;
+        try (SpooledDocument document = job.document) {
+            if (!job.start()) {
+                return;
+            }
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(part), BUFFER_SIZE)) {
+                if (job.operation == Operation.ADD_STAMP) {
+                    gostSignatureService.addStampToDocument(request, document, output, job);
+                } else {
+                    gostSignatureService.signDocumentWithSignature(request, document, output, job);
+                }
+            }
+            move(part, result);
+            job.finish(JobStatus.State.COMPLETED, null, Files.size(result));
+        } catch (Exception e) {
+            deleteQuietly(part);
+            if (job.cancelled) {
+                job.finish(JobStatus.State.CANCELLED, null, 0);
+            } else {
+                System.err.println("Задание " + job.id + " завершилось ошибкой: " + e.getMessage());
+                job.finish(JobStatus.State.FAILED, e.getMessage(), 0);
+            }
+        } finally {
+            if (!isFinished(job.state)) {
+                job.finish(JobStatus.State.FAILED, "Задание прервано", 0);
+            }
+            // Задание удалено во время выполнения - результат никому не нужен
+            if (!jobs.containsKey(job.id)) {
+                deleteQuietly(result);
+            }
+        }
+    }
+
+    private void removeExpired() {
+        Instant now = Instant.now();
+        for (Job job : jobs.values()) {
+            Instant finishedAt = job.finishedAt;
+            if (finishedAt != null && finishedAt.plus(ttl).isBefore(now) && jobs.remove(job.id, job)) {
+                deleteQuietly(resultPath(job.id));
+            }
+        }
+    }
+
+    private Job find(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw notFound();
+        }
+        return job;
+    }
+
+    private static ResponseStatusException notFound() {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Задание не найдено или истек срок хранения результата");
+    }
+
+    private String newId() {
+        byte[] idBytes = new byte[ID_BYTES];
+        random.nextBytes(idBytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(idBytes);
+    }
+
+    private Path resultPath(String id) {
+        return storeDirectory.resolve(id + RESULT_SUFFIX);
+    }
+
+    private static boolean isFinished(JobStatus.State state) {
+        return state == JobStatus.State.COMPLETED || state == JobStatus.State.FAILED
+                || state == JobStatus.State.CANCELLED;
+    }
+
+    private static void send(Job job, SseEmitter emitter, JobStatus status) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(status, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // Клиент отключился
+            job.unsubscribe(emitter);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void deleteStoredFiles() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(storeDirectory, "*{" + RESULT_SUFFIX + "," + PART_SUFFIX + "}")) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось очистить каталог заданий " + storeDirectory + ": " + e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Не удалось удалить файл задания " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Задание: исходные данные, состояние и подписчики на события.
+     * Состояние меняется под блокировкой задания, события отправляются вне ее
+     */
+    private final class Job implements ProgressListener {
+        private final String id;
+        private final Operation operation;
+        // Исходные данные нужны только до запуска и сбрасываются в start()
+        private DocumentSignRequest request;
+        private SpooledDocument document;
+        private final Instant createdAt = Instant.now();
+        private final List<SseEmitter> emitters = new ArrayList<>();
+
+        private volatile boolean cancelled;
+        private volatile JobStatus.State state = JobStatus.State.QUEUED;
+        private volatile Instant finishedAt;
+        private Instant startedAt;
+        private String stage;
+        private int pagesDone;
+        private int pagesTotal;
+        private String error;
+        private long resultSize;
+
+        Job(String id, Operation operation, DocumentSignRequest request, SpooledDocument document) {
+            this.id = id;
+            this.operation = operation;
+            this.request = request;
+            this.document = document;
+        }
+
+        /**
+         * Сбрасывает ссылки на ключ и документ; false - задание отменено, пока стояло в очереди
+         */
+        synchronized boolean start() {
+            request = null;
+            document = null;
+            if (cancelled) {
+                return false;
+            }
+            state = JobStatus.State.RUNNING;
+            startedAt = Instant.now();
+            return true;
+        }
+
+        @Override
+        public void onProgress(String stage, int done, int total) {
+            if (cancelled) {
+                throw new CancellationException("Задание отменено");
+            }
+            JobStatus status;
+            List<SseEmitter> targets;
+            synchronized (this) {
+                int percentBefore = percent();
+                boolean stageChanged = !stage.equals(this.stage);
+                this.stage = stage;
+                // Этапы без счетчика страниц (подпись) сохраняют счетчик штампа
+                if (total > 0) {
+                    pagesDone = done;
+                    pagesTotal = total;
+                }
+                if (!stageChanged && percent() == percentBefore) {
+                    return;
+                }
+                status = status();
+                targets = List.copyOf(emitters);
+            }
+            for (SseEmitter emitter : targets) {
+                send(this, emitter, status);
+            }
+        }
+
+        void finish(JobStatus.State finalState, String error, long resultSize) {
+            JobStatus status;
+            List<SseEmitter> targets;
+            synchronized (this) {
+                this.state = finalState;
+                this.error = error;
+                this.resultSize = resultSize;
+                this.finishedAt = Instant.now();
+                status = status();
+                targets = List.copyOf(emitters);
+                emitters.clear();
+            }
+            for (SseEmitter emitter : targets) {
+                send(this, emitter, status);
+                emitter.complete();
+            }
+        }
+
+        /**
+         * Задание в очереди завершается сразу, выполняемое - на следующем отчете о ходе
+         */
+        void cancel() {
+            boolean queued;
+            synchronized (this) {
+                if (isFinished(state)) {
+                    return;
+                }
+                cancelled = true;
+                queued = state == JobStatus.State.QUEUED;
+            }
+            if (queued) {
+                finish(JobStatus.State.CANCELLED, null, 0);
+            }
+        }
+
+        /**
+         * Добавляет подписчика, если задание еще не завершено, и возвращает текущее состояние
+         */
+        synchronized JobStatus subscribe(SseEmitter emitter) {
+            if (!isFinished(state)) {
+                emitters.add(emitter);
+            }
+            return status();
+        }
+
+        synchronized void unsubscribe(SseEmitter emitter) {
+            emitters.remove(emitter);
+        }
+
+        synchronized JobStatus status() {
+            return new JobStatus(id, operation.getPath(), state, stage, pagesDone, pagesTotal, percent(), error,
+                    createdAt, startedAt, finishedAt, finishedAt == null ? null : finishedAt.plus(ttl), resultSize);
+        }
+
+        /**
+         * Проценты по страницам штампа; 100 - только после записи результата
+         */
+        private int percent() {
+            if (state == JobStatus.State.COMPLETED) {
+                return 100;
+            }
+            return pagesTotal == 0 ? 0 : Math.min(99, (int) ((long) pagesDone * 100 / pagesTotal));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ru.gostsign.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.crypto.CryptoContexts;
+
+import jakarta.annotation.PostConstruct;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Реестр приватных ключей.
+ * Ключ импортируется один раз и дальше передается в запросах непрозрачным дескриптором;
+ * разобранные ключи хранятся в ограниченном кэше с вытеснением по размеру и времени простоя.
+ * Ключи, сгенерированные в /api/sign, лежат в отдельном кэше: поток генераций не вытесняет импортированные ключи.
+ */
+@Service
+public class KeyRegistry {
+    private static final int HANDLE_BYTES = 24;
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Value("${gostsign.keys.max-size:1000}")
+    private long maxSize;
+    @Value("${gostsign.keys.expire-after-access:30m}")
+    private Duration expireAfterAccess;
+    @Value("${gostsign.keys.generated.max-size:1000}")
+    private long generatedMaxSize;
+
+    private Cache<String, RegisteredKey> keys;
+    private Cache<String, RegisteredKey> generatedKeys;
+
+    @PostConstruct
+    void init() {
+        keys = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(expireAfterAccess)
+                .build();
+        generatedKeys = Caffeine.newBuilder()
+                .maximumSize(generatedMaxSize)
+                .expireAfterAccess(expireAfterAccess)
+                .build();
+    }
+
+    /**
+     * Импортирует ключ PKCS#8 (Base64) и возвращает дескриптор
+     */
+    public String importKey(String privateKeyBase64) {
+        return put(keys, parsePrivateKey(privateKeyBase64));
+    }
+
+    /**
+     * Регистрирует только что сгенерированный ключ в отдельном кэше сгенерированных ключей
+     */
+    public String register(PrivateKey privateKey) {
+        return put(generatedKeys, privateKey);
+    }
+
+    public void remove(String handle) {
+        keys.invalidate(handle);
+        generatedKeys.invalidate(handle);
+    }
+
+    private String put(Cache<String, RegisteredKey> cache, PrivateKey privateKey) {
+        RegisteredKey key = new RegisteredKey(privateKey, toParameters(privateKey));
+        byte[] handleBytes = new byte[HANDLE_BYTES];
+        random.nextBytes(handleBytes);
+        String handle = Base64.getUrlEncoder().withoutPadding().encodeToString(handleBytes);
+        cache.put(handle, key);
+        return handle;
+    }
+
+    /**
+     * Ключ по дескриптору, а если дескриптор не указан - разбор ключа из запроса
+     */
+    public PrivateKey resolvePrivateKey(String keyHandle, String privateKeyBase64) {
+        if (keyHandle != null && !keyHandle.isEmpty()) {
+            return get(keyHandle).privateKey;
+        }
+        return parsePrivateKey(privateKeyBase64);
+    }
+
+    /**
+     * Параметры ключа для подписи хэша; для зарегистрированного ключа уже подготовлены
+     */
+    public ECKeyParameters resolveKeyParameters(String keyHandle, String privateKeyBase64) {
+        if (keyHandle != null && !keyHandle.isEmpty()) {
+            return get(keyHandle).parameters;
+        }
+        return toParameters(parsePrivateKey(privateKeyBase64));
+    }
+
+    private RegisteredKey get(String handle) {
+        RegisteredKey key = keys.getIfPresent(handle);
+        if (key == null) {
+            key = generatedKeys.getIfPresent(handle);
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Ключ с указанным дескриптором не найден или истек срок его хранения");
+        }
+        return key;
+    }
+
+    private static PrivateKey parsePrivateKey(String privateKeyBase64) {
+        if (privateKeyBase64 == null || privateKeyBase64.isEmpty()) {
+            throw new IllegalArgumentException("Не указан приватный ключ");
+        }
+        try {
+            byte[] privateKeyBytes = Base64.getDecoder().decode(privateKeyBase64);
+            return CryptoContexts.parseGostPrivateKey(privateKeyBytes);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Ошибка при декодировании приватного ключа: " + e.getMessage(), e);
+        }
+    }
+
+    private static ECKeyParameters toParameters(PrivateKey privateKey) {
+        try {
+            return GostPrehashSignature.privateKeyParameters(privateKey);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Ключ не подходит для подписи ГОСТ Р 34.10-2012: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Разобранный ключ и его параметры BC
+     */
+    private static class RegisteredKey {
+        private final PrivateKey privateKey;
+        private final ECKeyParameters parameters;
+
+        RegisteredKey(PrivateKey privateKey, ECKeyParameters parameters) {
+            this.privateKey = privateKey;
+            this.parameters = parameters;
+        }
+    }
+}
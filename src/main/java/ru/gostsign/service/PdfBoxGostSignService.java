@@ -1,32 +1,217 @@
 package ru.gostsign.service;
 
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureInterface;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.ess.ESSCertIDv2;
+import org.bouncycastle.asn1.ess.SigningCertificateV2;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.rosstandart.RosstandartObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.IssuerSerial;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.CMSAttributeTableGenerator;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.CMSTypedData;
+import org.bouncycastle.cms.DefaultSignedAttributeTableGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ru.gostsign.crypto.GostContentSigner;
+import ru.gostsign.crypto.GostDigestCalculatorProvider;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.crypto.GostProviders;
 import ru.gostsign.model.DocumentSignRequest;
+import ru.gostsign.model.SignRequest;
 
 import java.io.*;
 import java.security.*;
 import java.security.cert.X509Certificate;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Set;
 
 @Service
 public class PdfBoxGostSignService {
-    static {
-        Security.addProvider(new BouncyCastleProvider());
-    }
+    // Резерв под CMS-подпись в /Contents (подпись, сертификат и подписанные атрибуты)
+    private static final int SIGNATURE_SIZE = 16 * 1024;
+
+    @Autowired
+    private GostSignService gostSignService;
+    @Autowired
+    private KeyRegistry keyRegistry;
+    @Autowired
+    private CertificateCache certificateCache;
 
     /**
      * Подписывает PDF встроенной ГОСТ-подписью (PKCS#7, CMS)
      */
     public byte[] signPdfWithGost(DocumentSignRequest request) {
-        // TODO: реализовать добавление поля подписи, генерацию CMS-подписи и встраивание в PDF
-        return null;
+        return signPdfWithGost(request.getDocumentBytes(), request);
+    }
+
+    /**
+     * Подписывает PDF, уже находящийся в памяти (небольшие документы из multipart и тела запроса)
+     */
+    public byte[] signPdfWithGost(byte[] pdfBytes, DocumentSignRequest request) {
+        try (PDDocument document = PDDocument.load(pdfBytes)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(pdfBytes.length + 2 * SIGNATURE_SIZE + 64 * 1024);
+            signDocument(document, request, baos);
+            return baos.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException("Ошибка при встроенном подписании PDF: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Подписывает PDF из файла встроенной ГОСТ-подписью и пишет результат в поток.
+     * Потоки документа держатся во временном файле, исходные байты копируются в выход потоково
+     */
+    public void signPdfWithGost(File pdfFile, DocumentSignRequest request, OutputStream output) {
+        try (PDDocument document = PDDocument.load(pdfFile, MemoryUsageSetting.setupTempFileOnly())) {
+            signDocument(document, request, output);
+        } catch (Exception e) {
+            throw new RuntimeException("Ошибка при встроенном подписании PDF: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Наносит штамп и добавляет подпись одним инкрементальным обновлением.
+     * Дайджест ByteRange считается при записи потоково (исходные байты + дописанная часть)
+     */
+    private void signDocument(PDDocument document, DocumentSignRequest request, OutputStream output) throws Exception {
+        ECKeyParameters privateKey = keyRegistry.resolveKeyParameters(request.getKeyHandle(), request.getPrivateKeyBase64());
+        if (request.getCertificateBase64() == null || request.getCertificateBase64().isEmpty()) {
+            throw new IllegalArgumentException("Для встроенной подписи необходим сертификат");
+        }
+        X509Certificate certificate = certificateCache.get(request.getCertificateBase64()).getCertificate();
+
+        // Штамп дописывается в ту же ревизию, что и подпись
+        Set<COSDictionary> modifiedObjects = gostSignService.stampDocument(document, convertToSignRequest(request));
+
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ETSI_CADES_DETACHED);
+        signature.setName(certificate.getSubjectX500Principal().getName());
+        signature.setReason("Документ подписан электронной подписью ГОСТ Р 34.10-2012");
+        signature.setSignDate(Calendar.getInstance());
+
+        SignatureOptions options = new SignatureOptions();
+        options.setPreferredSignatureSize(SIGNATURE_SIZE);
+        try {
+            document.addSignature(signature, new GostCmsSignature(privateKey, certificate), options);
+            document.saveIncremental(output, modifiedObjects);
+        } finally {
+            options.close();
+        }
+    }
+
+    /**
+     * Конвертирует DocumentSignRequest в SignRequest для передачи данных штампа
+     */
+    private SignRequest convertToSignRequest(DocumentSignRequest request) {
+        SignRequest signRequest = new SignRequest();
+        signRequest.setStampOrganizationName(request.getStampOrganizationName());
+        signRequest.setStampDirector(request.getStampDirector());
+        signRequest.setStampInn(request.getStampInn());
+        signRequest.setStampValidityPeriod(request.getStampValidityPeriod());
+        return signRequest;
+    }
+
+    /**
+     * Формирует отсоединенную CMS-подпись ГОСТ Р 34.10-2012 / 34.11-2012 (256 бит) над ByteRange
+     */
+    private static class GostCmsSignature implements SignatureInterface {
+        private final ECKeyParameters privateKey;
+        private final X509Certificate certificate;
+
+        GostCmsSignature(ECKeyParameters privateKey, X509Certificate certificate) {
+            this.privateKey = privateKey;
+            this.certificate = certificate;
+        }
+
+        @Override
+        public byte[] sign(InputStream content) throws IOException {
+            try {
+                ContentSigner signer = new GostContentSigner(privateKey);
+                CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+                generator.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(
+                        new GostDigestCalculatorProvider(new JcaDigestCalculatorProviderBuilder().setProvider(GostProviders.BOUNCY_CASTLE).build()))
+                        .setSignedAttributeGenerator(padesSignedAttributes(createSigningCertificateV2(certificate)))
+                        .build(signer, certificate));
+                generator.addCertificates(new JcaCertStore(Collections.singletonList(certificate)));
+                return generator.generate(new StreamingContent(content), false).getEncoded();
+            } catch (GeneralSecurityException | OperatorCreationException | CMSException e) {
+                throw new IOException("Ошибка формирования CMS-подписи: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Атрибут signing-certificate-v2 (ESSCertIDv2 с хэшем ГОСТ Р 34.11-2012), обязательный для PAdES
+         */
+        private static Attribute createSigningCertificateV2(X509Certificate certificate) throws GeneralSecurityException {
+            byte[] certHash = GostPrehashSignature.digest(certificate.getEncoded());
+            IssuerSerial issuerSerial = new IssuerSerial(
+                    new GeneralNames(new GeneralName(X500Name.getInstance(certificate.getIssuerX500Principal().getEncoded()))),
+                    certificate.getSerialNumber());
+            ESSCertIDv2 certId = new ESSCertIDv2(
+                    new AlgorithmIdentifier(RosstandartObjectIdentifiers.id_tc26_gost_3411_12_256), certHash, issuerSerial);
+            return new Attribute(PKCSObjectIdentifiers.id_aa_signingCertificateV2,
+                    new DERSet(new SigningCertificateV2(new ESSCertIDv2[]{certId})));
+        }
+    }
+
+    /**
+     * Подписанные атрибуты PAdES: без signing-time (время подписи хранится в /M словаря подписи),
+     * с signing-certificate-v2. Интерфейс BouncyCastle объявлен с raw Map, лямбда берет его тип параметра как есть
+     */
+    private static CMSAttributeTableGenerator padesSignedAttributes(Attribute signingCertificate) {
+        DefaultSignedAttributeTableGenerator defaults = new DefaultSignedAttributeTableGenerator();
+        return parameters -> defaults.getAttributes(parameters).remove(CMSAttributes.signingTime)
+                .add(signingCertificate.getAttrType(), signingCertificate.getAttrValues().getObjectAt(0));
+    }
+
+    /**
+     * Данные для CMS, которые читаются из потока один раз - прямо в вычисление дайджеста
+     */
+    private static class StreamingContent implements CMSTypedData {
+        private final InputStream content;
+
+        StreamingContent(InputStream content) {
+            this.content = content;
+        }
+
+        @Override
+        public ASN1ObjectIdentifier getContentType() {
+            return PKCSObjectIdentifiers.data;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            IOUtils.copy(content, out);
+            content.close();
+        }
+
+        @Override
+        public Object getContent() {
+            return content;
+        }
     }
-} 
\ No newline at end of file
+}
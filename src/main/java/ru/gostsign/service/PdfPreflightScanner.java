@@ -0,0 +1,848 @@
+package ru.gostsign.service;
+
+import org.apache.pdfbox.pdmodel.encryption.StandardSecurityHandler;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import ru.gostsign.model.PdfPreflight;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Предварительный разбор PDF без загрузки документа.
+ * Читаются только заголовок, хвост со startxref, таблицы или потоки перекрестных ссылок по цепочке /Prev,
+ * словарь шифрования, каталог, корень дерева страниц и поля подписей AcroForm. На документ в сотни мегабайт
+ * уходят миллисекунды, поэтому обрезанные и защищенные паролем PDF отклоняются до PDDocument.load,
+ * а число страниц и объектов используется при допуске запроса (AdmissionControl)
+ */
+@Service
+public class PdfPreflightScanner {
+    // Заголовок %PDF- может стоять не в самом начале файла
+    private static final int HEADER_WINDOW = 1024;
+    // После %%EOF бывает мусор: startxref ищется с конца окном, которое удваивается до MAX_TAIL_WINDOW
+    private static final int TAIL_WINDOW = 4096;
+    private static final int MAX_TAIL_WINDOW = 1024 * 1024;
+    private static final int OBJECT_WINDOW = 4096;
+    // Пределы против зацикленных /Prev, распакованных "бомб" и форм с тысячами полей
+    private static final int MAX_WINDOW = 64 * 1024 * 1024;
+    private static final int MAX_XREF_SECTIONS = 10_000;
+    private static final int MAX_SIGNATURE_FIELDS = 1000;
+    private static final Pattern START_XREF_OFFSET = Pattern.compile("\\s*(\\d{1,15})");
+
+    /**
+     * Отчет о структуре PDF; ошибки структуры не бросаются, а попадают в problem
+     */
+    public PdfPreflight scan(SpooledDocument document) {
+        if (document.getPreflight() != null) {
+            return document.getPreflight();
+        }
+        long start = System.nanoTime();
+        PdfPreflight preflight = new PdfPreflight();
+        preflight.setSize(document.getSize());
+        try (Source source = Source.of(document)) {
+            new Scan(source, preflight).run();
+        } catch (IOException | RuntimeException e) {
+            preflight.setProblem(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+        preflight.setScanMicros((System.nanoTime() - start) / 1000);
+        document.setPreflight(preflight);
+        return preflight;
+    }
+
+    /**
+     * Разбор PDF перед обработкой: файл, переданный не полностью, и документ, который без пароля
+     * не открыть, отклоняются с 400 до загрузки в PDFBox
+     */
+    public PdfPreflight check(SpooledDocument document) {
+        PdfPreflight preflight = scan(document);
+        // null - полнота не установлена (startxref дальше окна поиска), документ разбирает PDFBox
+        if (Boolean.FALSE.equals(preflight.getComplete())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "PDF поврежден или передан не полностью"
+                    + (preflight.getProblem() != null ? ": " + preflight.getProblem() : ""));
+        }
+        if (preflight.isPasswordRequired()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "PDF защищен паролем на открытие");
+        }
+        return preflight;
+    }
+
+    /**
+     * Один проход разбора: таблицы ссылок, затем каталог по ним
+     */
+    private static final class Scan {
+        private final Source source;
+        private final PdfPreflight preflight;
+        // Номер объекта -> смещение (> 0), место в потоке объектов (< 0) или 0 - свободен.
+        // Более новые секции разбираются первыми, поэтому запись из более старой секции не перезаписывает
+        private final Map<Integer, Long> entries = new HashMap<>();
+        private final Map<Integer, IndirectObject> objectStreams = new HashMap<>();
+        private Map<String, Object> trailer;
+
+        Scan(Source source, PdfPreflight preflight) {
+            this.source = source;
+            this.preflight = preflight;
+        }
+
+        void run() throws IOException {
+            readHeader();
+            long startXref = readStartXref();
+            if (startXref < 0) {
+                preflight.setProblem(preflight.getComplete() == null
+                        ? "startxref не найден в последних " + MAX_TAIL_WINDOW / 1024 + " КБ"
+                        : "не найден startxref");
+                return;
+            }
+            int sections = readXrefChain(startXref);
+            preflight.setIncrementalUpdates(Math.max(0, sections - 1 - (preflight.isLinearized() ? 1 : 0)));
+            preflight.setObjectCount((int) entries.values().stream().filter(value -> value != 0).count());
+            // Такие ссылки PDFBox восстанавливает, перестраивая таблицу; обрыв файла определяют startxref и %%EOF
+            if (entries.values().stream().anyMatch(value -> value > source.length)) {
+                preflight.setProblem("объект за концом файла");
+            }
+            Object encrypt = trailer.get("Encrypt");
+            if (encrypt != null) {
+                preflight.setEncrypted(true);
+                preflight.setPasswordRequired(isPasswordRequired(dictionary(resolve(encrypt))));
+            }
+            readCatalog();
+        }
+
+        private void readHeader() throws IOException {
+            String head = new String(source.read(0, HEADER_WINDOW), StandardCharsets.ISO_8859_1);
+            int at = head.indexOf("%PDF-");
+            if (at < 0) {
+                preflight.setComplete(false);
+                throw new IOException("нет заголовка %PDF-");
+            }
+            int end = at + 5;
+            while (end < head.length() && (Character.isDigit(head.charAt(end)) || head.charAt(end) == '.')) {
+                end++;
+            }
+            preflight.setVersion(head.substring(at + 5, end));
+            preflight.setLinearized(head.contains("/Linearized"));
+        }
+
+        /**
+         * Смещение из последнего startxref; -1, если его нет. Если просмотрен весь файл, он обрезан
+         * (complete = false), если только последний мегабайт - полнота остается неизвестной
+         */
+        private long readStartXref() throws IOException {
+            int window = (int) Math.min(source.length, TAIL_WINDOW);
+            String tail = new String(source.read(source.length - window, window), StandardCharsets.ISO_8859_1);
+            int at = tail.lastIndexOf("startxref");
+            while (at < 0 && window < source.length && window < MAX_TAIL_WINDOW) {
+                window = (int) Math.min(source.length, Math.min((long) window * 2, MAX_TAIL_WINDOW));
+                tail = new String(source.read(source.length - window, window), StandardCharsets.ISO_8859_1);
+                at = tail.lastIndexOf("startxref");
+            }
+            if (at < 0) {
+                if (window >= source.length) {
+                    preflight.setComplete(false);
+                }
+                return -1;
+            }
+            preflight.setComplete(tail.indexOf("%%EOF", at) >= 0);
+            Matcher offset = START_XREF_OFFSET.matcher(tail).region(at + 9, tail.length());
+            return offset.lookingAt() ? Long.parseLong(offset.group(1)) : -1;
+        }
+
+        /**
+         * Секции ссылок от последней к первой; возвращает их число
+         */
+        private int readXrefChain(long offset) throws IOException {
+            Set<Long> visited = new HashSet<>();
+            int sections = 0;
+            while (offset > 0 && sections < MAX_XREF_SECTIONS && visited.add(offset)) {
+                Map<Integer, Long> section = new HashMap<>();
+                Map<String, Object> sectionTrailer = readXrefSection(offset, section);
+                if (trailer == null) {
+                    trailer = sectionTrailer;
+                }
+                sections++;
+                // Гибридный файл: сжатые объекты описаны в дополнительном потоке ссылок, а в таблице
+                // той же секции они свободны (f) - запись потока заменяет свободную запись таблицы
+                if (sectionTrailer.get("XRefStm") instanceof Long xrefStm) {
+                    Map<Integer, Long> hidden = new HashMap<>();
+                    readXrefSection(xrefStm, hidden);
+                    hidden.forEach((number, value) -> section.merge(number, value,
+                            (table, stream) -> table != 0 ? table : stream));
+                }
+                section.forEach(entries::putIfAbsent);
+                offset = sectionTrailer.get("Prev") instanceof Long prev ? prev : -1;
+            }
+            return sections;
+        }
+
+        /**
+         * Записи одной секции (таблицы или потока ссылок) в section; возвращает словарь trailer
+         */
+        private Map<String, Object> readXrefSection(long offset, Map<Integer, Long> section) throws IOException {
+            if (offset >= source.length) {
+                throw new IOException("неверное смещение таблицы ссылок " + offset);
+            }
+            for (int window = OBJECT_WINDOW * 16; ; window *= 2) {
+                Lexer lexer = new Lexer(source.read(offset, window), offset);
+                try {
+                    if (lexer.peekKeyword("xref")) {
+                        return readXrefTable(lexer, section);
+                    }
+                    return readXrefStream(offset, section);
+                } catch (EOFException e) {
+                    if (window >= MAX_WINDOW || offset + window >= source.length) {
+                        throw new IOException("таблица ссылок обрывается");
+                    }
+                }
+            }
+        }
+
+        /**
+         * Классическая таблица: подсекции "первый количество", записи "смещение поколение n|f", затем trailer
+         */
+        private Map<String, Object> readXrefTable(Lexer lexer, Map<Integer, Long> section) throws IOException {
+            lexer.keyword();
+            while (!lexer.peekKeyword("trailer")) {
+                int first = intValue(lexer.next());
+                int count = intValue(lexer.next());
+                for (int i = 0; i < count; i++) {
+                    long position = longValue(lexer.next());
+                    lexer.next();
+                    String type = lexer.keyword();
+                    section.putIfAbsent(first + i, "n".equals(type) ? position : 0L);
+                }
+            }
+            lexer.keyword();
+            return dictionary(lexer.next());
+        }
+
+        private Map<String, Object> readXrefStream(long offset, Map<Integer, Long> section) throws IOException {
+            preflight.setXrefStream(true);
+            IndirectObject object = readIndirectObject(offset);
+            Map<String, Object> dictionary = dictionary(object.value);
+            List<Object> widths = list(dictionary.get("W"));
+            int w0 = intValue(widths.get(0)), w1 = intValue(widths.get(1)), w2 = intValue(widths.get(2));
+            int rowSize = w0 + w1 + w2;
+            List<Object> index = dictionary.containsKey("Index")
+                    ? list(dictionary.get("Index")) : List.of(0L, dictionary.get("Size"));
+            byte[] data = object.stream;
+            int row = 0;
+            for (int i = 0; i + 1 < index.size(); i += 2) {
+                int first = intValue(index.get(i));
+                int count = intValue(index.get(i + 1));
+                for (int j = 0; j < count && (row + 1) * rowSize <= data.length; j++, row++) {
+                    int at = row * rowSize;
+                    long type = w0 == 0 ? 1 : field(data, at, w0);
+                    long second = field(data, at + w0, w1);
+                    long third = field(data, at + w0 + w1, w2);
+                    long value = type == 1 ? second : type == 2 ? -((second << 32) | third) - 1 : 0;
+                    section.putIfAbsent(first + j, value);
+                }
+            }
+            return dictionary;
+        }
+
+        private void readCatalog() throws IOException {
+            Map<String, Object> catalog;
+            try {
+                catalog = dictionary(resolve(trailer.get("Root")));
+            } catch (IOException | RuntimeException e) {
+                throw new IOException("каталог не прочитан" + (preflight.isEncrypted() ? " (зашифрованные потоки объектов)" : ""), e);
+            }
+            Object count = resolve(dictionary(resolve(catalog.get("Pages"))).get("Count"));
+            if (count instanceof Long pages) {
+                preflight.setPageCount((int) Math.min(Integer.MAX_VALUE, pages));
+            }
+            Object acroForm = resolve(catalog.get("AcroForm"));
+            if (acroForm instanceof Map<?, ?> form && resolve(form.get("Fields")) instanceof List<?> fields) {
+                int signatures = 0;
+                for (int i = 0; i < fields.size() && i < MAX_SIGNATURE_FIELDS; i++) {
+                    if (resolve(fields.get(i)) instanceof Map<?, ?> field
+                            && "Sig".equals(resolve(field.get("FT"))) && field.get("V") != null) {
+                        signatures++;
+                    }
+                }
+                preflight.setSignatureCount(signatures);
+            }
+        }
+
+        /**
+         * Пустой пароль пользователя проверяется так же, как при открытии в PDFBox; сертификатная защита
+         * без закрытого ключа получателя не открывается
+         */
+        private boolean isPasswordRequired(Map<String, Object> encrypt) throws IOException {
+            if (!"Standard".equals(resolve(encrypt.get("Filter")))) {
+                return true;
+            }
+            int revision = intValue(resolve(encrypt.get("R")));
+            int lengthBits = encrypt.get("Length") instanceof Long length ? length.intValue() : 40;
+            byte[] owner = (byte[]) resolve(encrypt.get("O"));
+            byte[] user = (byte[]) resolve(encrypt.get("U"));
+            int permissions = (int) longValue(resolve(encrypt.get("P")));
+            boolean encryptMetadata = !Boolean.FALSE.equals(resolve(encrypt.get("EncryptMetadata")));
+            byte[] id = new byte[0];
+            if (trailer.get("ID") instanceof List<?> ids && !ids.isEmpty() && ids.get(0) instanceof byte[] first) {
+                id = first;
+            }
+            int keyLength = revision >= 5 ? 32 : lengthBits / 8;
+            return !new StandardSecurityHandler().isUserPassword(new byte[0], user, owner, permissions, id,
+                    revision, keyLength, encryptMetadata);
+        }
+
+        private Object resolve(Object value) throws IOException {
+            if (!(value instanceof Ref ref)) {
+                return value;
+            }
+            Long entry = entries.get(ref.number);
+            if (entry == null || entry == 0) {
+                return null;
+            }
+            if (entry > 0) {
+                return readIndirectObject(entry).value;
+            }
+            long packed = -entry - 1;
+            return readFromObjectStream((int) (packed >>> 32), (int) packed);
+        }
+
+        /**
+         * Объект номер index из потока объектов: в начале потока пары "номер смещение", объекты - после /First
+         */
+        private Object readFromObjectStream(int streamNumber, int index) throws IOException {
+            IndirectObject stream = objectStreams.get(streamNumber);
+            if (stream == null) {
+                Long offset = entries.get(streamNumber);
+                if (offset == null || offset <= 0) {
+                    throw new IOException("нет потока объектов " + streamNumber);
+                }
+                stream = readIndirectObject(offset);
+                objectStreams.put(streamNumber, stream);
+            }
+            byte[] data = stream.stream;
+            Map<String, Object> dictionary = dictionary(stream.value);
+            Lexer header = new Lexer(data, 0);
+            int position = -1;
+            for (int i = 0; i <= index; i++) {
+                header.next();
+                position = intValue(header.next());
+            }
+            return new Lexer(data, 0).at(intValue(dictionary.get("First")) + position).next();
+        }
+
+        /**
+         * "номер поколение obj" и значение; для потока - распакованное содержимое
+         */
+        private IndirectObject readIndirectObject(long offset) throws IOException {
+            for (int window = OBJECT_WINDOW; ; window *= 2) {
+                Lexer lexer = new Lexer(source.read(offset, window), offset);
+                try {
+                    lexer.next();
+                    lexer.next();
+                    if (!"obj".equals(lexer.keyword())) {
+                        throw new IOException("нет объекта по смещению " + offset);
+                    }
+                    Object value = lexer.next();
+                    byte[] stream = null;
+                    if (value instanceof Map<?, ?> && lexer.peekKeyword("stream")) {
+                        stream = readStream(dictionary(value), lexer.streamStart());
+                    }
+                    return new IndirectObject(value, stream);
+                } catch (EOFException e) {
+                    if (window >= MAX_WINDOW || offset + window >= source.length) {
+                        throw new IOException("объект по смещению " + offset + " обрывается");
+                    }
+                }
+            }
+        }
+
+        private byte[] readStream(Map<String, Object> dictionary, long start) throws IOException {
+            long length = longValue(resolve(dictionary.get("Length")));
+            if (length < 0 || length > MAX_WINDOW || start + length > source.length) {
+                throw new IOException("неверная длина потока");
+            }
+            byte[] data = source.read(start, (int) length);
+            Object filter = dictionary.get("Filter");
+            if (filter instanceof List<?> filters) {
+                filter = filters.isEmpty() ? null : filters.size() == 1 ? filters.get(0) : "";
+            }
+            if (filter == null) {
+                return data;
+            }
+            if (!"FlateDecode".equals(filter)) {
+                throw new IOException("неподдерживаемый фильтр потока " + filter);
+            }
+            Object parameters = resolve(dictionary.get("DecodeParms"));
+            if (parameters instanceof List<?> list) {
+                parameters = list.isEmpty() ? null : resolve(list.get(0));
+            }
+            byte[] inflated = inflate(data);
+            return parameters instanceof Map<?, ?> map ? unpredict(inflated, dictionary(map)) : inflated;
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[64 * 1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+                if (out.size() > MAX_WINDOW) {
+                    throw new IOException("поток распаковывается больше чем в " + MAX_WINDOW / (1024 * 1024) + " МБ");
+                }
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("поток FlateDecode поврежден", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Снимает PNG-предикторы (10-15), которыми обычно сжаты потоки ссылок
+     */
+    private static byte[] unpredict(byte[] data, Map<String, Object> parameters) throws IOException {
+        int predictor = parameters.get("Predictor") instanceof Long value ? value.intValue() : 1;
+        if (predictor < 10) {
+            if (predictor != 1) {
+                throw new IOException("неподдерживаемый предиктор " + predictor);
+            }
+            return data;
+        }
+        int colors = parameters.get("Colors") instanceof Long value ? value.intValue() : 1;
+        int bits = parameters.get("BitsPerComponent") instanceof Long value ? value.intValue() : 8;
+        int columns = parameters.get("Columns") instanceof Long value ? value.intValue() : 1;
+        int bytesPerPixel = Math.max(1, colors * bits / 8);
+        int rowSize = (columns * colors * bits + 7) / 8;
+        int rows = data.length / (rowSize + 1);
+        byte[] out = new byte[rows * rowSize];
+        for (int r = 0; r < rows; r++) {
+            int filter = data[r * (rowSize + 1)] & 0xFF;
+            int in = r * (rowSize + 1) + 1;
+            int at = r * rowSize;
+            for (int i = 0; i < rowSize; i++) {
+                int left = i >= bytesPerPixel ? out[at + i - bytesPerPixel] & 0xFF : 0;
+                int up = r > 0 ? out[at - rowSize + i] & 0xFF : 0;
+                int upLeft = r > 0 && i >= bytesPerPixel ? out[at - rowSize + i - bytesPerPixel] & 0xFF : 0;
+                int predicted = switch (filter) {
+                    case 0 -> 0;
+                    case 1 -> left;
+                    case 2 -> up;
+                    case 3 -> (left + up) / 2;
+                    case 4 -> paeth(left, up, upLeft);
+                    default -> throw new IOException("неизвестный PNG-фильтр " + filter);
+                };
+                out[at + i] = (byte) (data[in + i] + predicted);
+            }
+        }
+        return out;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int p = left + up - upLeft;
+        int pa = Math.abs(p - left), pb = Math.abs(p - up), pc = Math.abs(p - upLeft);
+        return pa <= pb && pa <= pc ? left : pb <= pc ? up : upLeft;
+    }
+
+    private static long field(byte[] data, int offset, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> dictionary(Object value) throws IOException {
+        if (value instanceof Map<?, ?> map) {
+            return (Map<String, Object>) map;
+        }
+        throw new IOException("ожидался словарь");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Object value) throws IOException {
+        if (value instanceof List<?> list) {
+            return (List<Object>) list;
+        }
+        throw new IOException("ожидался массив");
+    }
+
+    private static long longValue(Object value) throws IOException {
+        if (value instanceof Long number) {
+            return number;
+        }
+        throw new IOException("ожидалось целое число");
+    }
+
+    private static int intValue(Object value) throws IOException {
+        return (int) longValue(value);
+    }
+
+    /**
+     * Ссылка "номер поколение R"
+     */
+    private static final class Ref {
+        private final int number;
+
+        Ref(int number) {
+            this.number = number;
+        }
+    }
+
+    private static final class IndirectObject {
+        private final Object value;
+        private final byte[] stream;
+
+        IndirectObject(Object value, byte[] stream) {
+            this.value = value;
+            this.stream = stream;
+        }
+    }
+
+    /**
+     * Лексер объектов PDF над окном файла. Имена - String, строки - byte[], числа - Long или Double,
+     * массивы - List, словари - Map; конец окна - EOFException (окно увеличивается и разбор повторяется)
+     */
+    private static final class Lexer {
+        private final byte[] buffer;
+        // Смещение окна в файле - для начала данных потока
+        private final long base;
+        private int position;
+
+        Lexer(byte[] buffer, long base) {
+            this.buffer = buffer;
+            this.base = base;
+        }
+
+        Lexer at(int position) {
+            this.position = position;
+            return this;
+        }
+
+        Object next() throws IOException {
+            skipWhitespace();
+            int c = peek();
+            switch (c) {
+                case '/':
+                    position++;
+                    return name();
+                case '(':
+                    position++;
+                    return literalString();
+                case '[':
+                    position++;
+                    return array();
+                case '<':
+                    if (peekAt(1) == '<') {
+                        position += 2;
+                        return dictionary();
+                    }
+                    position++;
+                    return hexString();
+                default:
+                    if (c == '+' || c == '-' || c == '.' || Character.isDigit(c)) {
+                        return numberOrRef();
+                    }
+                    String keyword = keyword();
+                    switch (keyword) {
+                        case "true":
+                            return Boolean.TRUE;
+                        case "false":
+                            return Boolean.FALSE;
+                        case "null":
+                            return null;
+                        default:
+                            throw new IOException("неожиданная лексема " + keyword);
+                    }
+            }
+        }
+
+        String keyword() throws IOException {
+            skipWhitespace();
+            int start = position;
+            while (position < buffer.length && !isDelimiter(buffer[position]) && !isWhitespace(buffer[position])) {
+                position++;
+            }
+            if (position == buffer.length) {
+                throw new EOFException();
+            }
+            return new String(buffer, start, position - start, StandardCharsets.ISO_8859_1);
+        }
+
+        boolean peekKeyword(String keyword) throws IOException {
+            skipWhitespace();
+            int end = position + keyword.length();
+            if (end >= buffer.length) {
+                throw new EOFException();
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                if (buffer[position + i] != keyword.charAt(i)) {
+                    return false;
+                }
+            }
+            return isDelimiter(buffer[end]) || isWhitespace(buffer[end]);
+        }
+
+        /**
+         * Смещение данных потока в файле: после "stream" и конца строки
+         */
+        long streamStart() throws IOException {
+            keyword();
+            if (peek() == '\r') {
+                position++;
+            }
+            if (peek() == '\n') {
+                position++;
+            }
+            return base + position;
+        }
+
+        private Object numberOrRef() throws IOException {
+            Object number = number();
+            if (!(number instanceof Long first) || first < 0) {
+                return number;
+            }
+            int mark = position;
+            skipWhitespace();
+            if (Character.isDigit(peek())) {
+                Object generation = number();
+                skipWhitespace();
+                if (generation instanceof Long && peek() == 'R'
+                        && (position + 1 >= buffer.length || isDelimiter(buffer[position + 1]) || isWhitespace(buffer[position + 1]))) {
+                    position++;
+                    return new Ref((int) (long) first);
+                }
+            }
+            position = mark;
+            return first;
+        }
+
+        private Object number() throws IOException {
+            int start = position;
+            while (position < buffer.length && (Character.isDigit(buffer[position])
+                    || buffer[position] == '.' || buffer[position] == '-' || buffer[position] == '+')) {
+                position++;
+            }
+            if (position == buffer.length) {
+                throw new EOFException();
+            }
+            String text = new String(buffer, start, position - start, StandardCharsets.ISO_8859_1);
+            try {
+                return text.indexOf('.') >= 0 ? (Object) Double.parseDouble(text) : (Object) Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                throw new IOException("неверное число " + text);
+            }
+        }
+
+        private String name() throws IOException {
+            StringBuilder name = new StringBuilder();
+            while (!isDelimiter(peek()) && !isWhitespace(peek())) {
+                int c = buffer[position++];
+                if (c == '#' && position + 1 < buffer.length) {
+                    c = Integer.parseInt(new String(buffer, position, 2, StandardCharsets.ISO_8859_1), 16);
+                    position += 2;
+                }
+                name.append((char) (c & 0xFF));
+            }
+            return name.toString();
+        }
+
+        private byte[] literalString() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int depth = 1;
+            while (true) {
+                int c = next8();
+                if (c == '\\') {
+                    c = next8();
+                    switch (c) {
+                        case 'n' -> out.write('\n');
+                        case 'r' -> out.write('\r');
+                        case 't' -> out.write('\t');
+                        case 'b' -> out.write('\b');
+                        case 'f' -> out.write('\f');
+                        case '\r' -> {
+                            if (peek() == '\n') {
+                                position++;
+                            }
+                        }
+                        case '\n' -> {
+                        }
+                        default -> {
+                            if (c >= '0' && c <= '7') {
+                                int octal = c - '0';
+                                for (int i = 0; i < 2 && peek() >= '0' && peek() <= '7'; i++) {
+                                    octal = octal * 8 + (next8() - '0');
+                                }
+                                out.write(octal);
+                            } else {
+                                out.write(c);
+                            }
+                        }
+                    }
+                    continue;
+                }
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return out.toByteArray();
+                }
+                out.write(c);
+            }
+        }
+
+        private byte[] hexString() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int high = -1;
+            while (true) {
+                int c = next8();
+                if (c == '>') {
+                    if (high >= 0) {
+                        out.write(high << 4);
+                    }
+                    return out.toByteArray();
+                }
+                int digit = Character.digit(c, 16);
+                if (digit < 0) {
+                    continue;
+                }
+                if (high < 0) {
+                    high = digit;
+                } else {
+                    out.write((high << 4) | digit);
+                    high = -1;
+                }
+            }
+        }
+
+        private List<Object> array() throws IOException {
+            List<Object> array = new ArrayList<>();
+            while (true) {
+                skipWhitespace();
+                if (peek() == ']') {
+                    position++;
+                    return array;
+                }
+                array.add(next());
+            }
+        }
+
+        private Map<String, Object> dictionary() throws IOException {
+            Map<String, Object> dictionary = new LinkedHashMap<>();
+            while (true) {
+                skipWhitespace();
+                if (peek() == '>' && peekAt(1) == '>') {
+                    position += 2;
+                    return dictionary;
+                }
+                if (!(next() instanceof String key)) {
+                    throw new IOException("ключ словаря не является именем");
+                }
+                dictionary.put(key, next());
+            }
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (true) {
+                int c = peek();
+                if (c == '%') {
+                    while (peek() != '\n' && peek() != '\r') {
+                        position++;
+                    }
+                } else if (isWhitespace(c)) {
+                    position++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private int peek() throws EOFException {
+            return peekAt(0);
+        }
+
+        private int peekAt(int offset) throws EOFException {
+            if (position + offset >= buffer.length) {
+                throw new EOFException();
+            }
+            return buffer[position + offset] & 0xFF;
+        }
+
+        private int next8() throws EOFException {
+            int c = peek();
+            position++;
+            return c;
+        }
+
+        private static boolean isWhitespace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0;
+        }
+
+        private static boolean isDelimiter(int c) {
+            return c == '(' || c == ')' || c == '<' || c == '>' || c == '[' || c == ']'
+                    || c == '{' || c == '}' || c == '/' || c == '%';
+        }
+    }
+
+    /**
+     * Произвольный доступ к документу в памяти или во временном файле
+     */
+    private static final class Source implements Closeable {
+        private final byte[] bytes;
+        private final RandomAccessFile file;
+        private final long length;
+
+        private Source(byte[] bytes, RandomAccessFile file, long length) {
+            this.bytes = bytes;
+            this.file = file;
+            this.length = length;
+        }
+
+        static Source of(SpooledDocument document) throws IOException {
+            if (document.isInMemory()) {
+                byte[] bytes = document.getBytes();
+                return new Source(bytes, null, bytes.length);
+            }
+            RandomAccessFile file = new RandomAccessFile(document.getFile(), "r");
+            return new Source(null, file, file.length());
+        }
+
+        byte[] read(long position, int size) throws IOException {
+            int n = (int) Math.max(0, Math.min(size, length - position));
+            byte[] out = new byte[n];
+            if (bytes != null) {
+                System.arraycopy(bytes, (int) position, out, 0, n);
+            } else {
+                file.seek(position);
+                file.readFully(out);
+            }
+            return out;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+}
@@ -5,41 +5,58 @@ import com.itextpdf.text.pdf.*;
 import com.itextpdf.text.pdf.security.*;
 import com.itextpdf.text.pdf.BaseFont;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.bouncycastle.crypto.io.DigestOutputStream;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import ru.gostsign.crypto.CryptoContexts;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.crypto.StreebogDigest;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.gostsign.model.DocumentSignRequest;
 import ru.gostsign.model.VerificationRequest;
 import ru.gostsign.model.VerificationResult;
 import ru.gostsign.model.SignRequest;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.Signature;
 import java.security.*;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.Base64;
 import java.util.Calendar;
 
 @Service
 public class PdfSignService {
-    
-    static {
-        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
-    }
+    @Autowired
+    private GostSignService gostSignService;
+    @Autowired
+    private KeyRegistry keyRegistry;
+    @Autowired
+    private GostNoncePool noncePool;
+    @Autowired
+    private DocumentSpooler documentSpooler;
 
     /**
      * Подписание PDF документа с добавлением штампа и логотипа
      */
     public byte[] signPdfDocument(DocumentSignRequest request) {
+        return signPdfDocument(request, SpooledDocument.of(request.getDocumentBytes()));
+    }
+
+    /**
+     * Подписание PDF документа, принятого потоком (в памяти или во временном файле)
+     */
+    public byte[] signPdfDocument(DocumentSignRequest request, SpooledDocument document) {
         try {
             // Добавляем штамп с динамическими полями
-            GostSignService gostSignService = new GostSignService();
-            byte[] pdfWithStamp = gostSignService.addStampToPdf(request.getDocumentBytes(), convertToSignRequest(request));
+            byte[] pdfWithStamp = stampPdf(request, document);
             
             // Возвращаем PDF с штампом (подпись создается отдельно при необходимости)
             return pdfWithStamp;
@@ -52,10 +69,16 @@ public class PdfSignService {
      * Добавление только штампа к PDF документу (без подписи)
      */
     public byte[] addStampToPdfOnly(DocumentSignRequest request) {
+        return addStampToPdfOnly(request, SpooledDocument.of(request.getDocumentBytes()));
+    }
+
+    /**
+     * Добавление только штампа к PDF документу, принятому потоком
+     */
+    public byte[] addStampToPdfOnly(DocumentSignRequest request, SpooledDocument document) {
         try {
             // Добавляем штамп с динамическими полями
-            GostSignService gostSignService = new GostSignService();
-            byte[] pdfWithStamp = gostSignService.addStampToPdf(request.getDocumentBytes(), convertToSignRequest(request));
+            byte[] pdfWithStamp = stampPdf(request, document);
             
             // Возвращаем PDF с штампом
             return pdfWithStamp;
@@ -65,78 +88,127 @@ public class PdfSignService {
     }
 
     /**
-     * Подписание PDF документа с возвратом ZIP архива (PDF + подпись)
+     * Добавление только штампа к PDF документу с записью результата в поток
      */
-    public byte[] signPdfDocumentWithSignature(DocumentSignRequest request) {
+    public void addStampToPdfOnly(DocumentSignRequest request, SpooledDocument document, OutputStream output,
+                                  ProgressListener listener) {
         try {
-            // Добавляем штамп с динамическими полями
-            GostSignService gostSignService = new GostSignService();
-            byte[] pdfWithStamp = gostSignService.addStampToPdf(request.getDocumentBytes(), convertToSignRequest(request));
-            
-            try {
-                // Создаем отдельную подпись документа (подписываем PDF с штампом)
-                byte[] signature = createDocumentSignature(request, pdfWithStamp);
-                
-                // Создаем ZIP архив с PDF и подписью
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(baos)) {
-                    // PDF с штампом
-                    zip.putArchiveEntry(new ZipArchiveEntry("signed_document.pdf"));
-                    zip.write(pdfWithStamp);
-                    zip.closeArchiveEntry();
-                    
-                    // Подпись в Base64
-                    zip.putArchiveEntry(new ZipArchiveEntry("signature.txt"));
-                    zip.write(signature);
-                    zip.closeArchiveEntry();
-                    zip.finish();
+            stampPdf(request, document, output, listener);
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка при добавлении штампа к PDF: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Подписание PDF документа с записью ZIP архива (PDF + подпись) в поток.
+     * PDF со штампом хэшируется по ходу сохранения и копится в буфере (крупный - во временном файле),
+     * поэтому ни документ, ни архив целиком в памяти не собираются
+     */
+    public void signPdfDocumentWithSignature(DocumentSignRequest request, SpooledDocument document,
+                                             OutputStream output) {
+        signPdfDocumentWithSignature(request, document, output, ProgressListener.NONE);
+    }
+
+    /**
+     * Подписание PDF документа с записью ZIP архива в поток и отчетом о ходе штампа и подписи
+     */
+    public void signPdfDocumentWithSignature(DocumentSignRequest request, SpooledDocument document,
+                                             OutputStream output, ProgressListener listener) {
+        // Ключ разбирается до записи: при ошибке возвращается PDF со штампом и описание ошибки
+        ECKeyParameters privateKey = null;
+        String signatureError = null;
+        try {
+            privateKey = keyRegistry.resolveKeyParameters(request.getKeyHandle(), request.getPrivateKeyBase64());
+        } catch (Exception e) {
+            signatureError = signatureFailed(e);
+        }
+        try {
+            ZipArchiveOutputStream zip = new ZipArchiveOutputStream(output);
+            if (privateKey != null) {
+                // PDF со штампом копится в буфере (выше порога - во временном файле) и одновременно хэшируется:
+                // имя записи в архиве выбирается после подписи
+                StreebogDigest digest = StreebogDigest.streebog256();
+                DeferredFileOutputStream stamped = documentSpooler.buffer();
+                try {
+                    try (OutputStream buffer = new TeeOutputStream(stamped, new DigestOutputStream(digest))) {
+                        stampPdf(request, document, buffer, listener);
+                    }
+                    listener.onProgress(ProgressListener.SIGNING, 0, 0);
+
+                    byte[] hash = new byte[GostPrehashSignature.DIGEST_SIZE];
+                    digest.doFinal(hash, 0);
+                    byte[] signature = null;
+                    try {
+                        signature = noncePool.sign(privateKey, hash);
+                    } catch (Exception e) {
+                        signatureError = signatureFailed(e);
+                    }
+                    // Подписан ровно тот PDF, что записывается в архив; без подписи - как при ошибке ключа
+                    try (OutputStream entry = ZipPackaging.openEntry(zip,
+                            signature != null ? "signed_document.pdf" : "document_with_stamp.pdf");
+                         InputStream pdf = stamped.toInputStream()) {
+                        pdf.transferTo(entry);
+                    }
+                    if (signature != null) {
+                        // Подпись в Base64 (формат как у GOST3411WITHECGOST3410-2012-256)
+                        ZipPackaging.putEntry(zip, "signature.txt", Base64.getEncoder().encode(signature));
+                    } else {
+                        ZipPackaging.putEntry(zip, "signature_error.txt",
+                                ("Ошибка создания подписи: " + signatureError).getBytes(StandardCharsets.UTF_8));
+                    }
+                } finally {
+                    if (!stamped.isInMemory()) {
+                        Files.deleteIfExists(stamped.getFile().toPath());
+                    }
                 }
-                return baos.toByteArray();
-            } catch (Exception signatureError) {
-                // Если не удалось создать подпись, возвращаем только PDF с штампом
-                System.err.println("Предупреждение: Не удалось создать подпись: " + signatureError.getMessage());
-                System.err.println("Возвращаем только PDF с штампом");
-                
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(baos)) {
-                    // PDF с штампом
-                    zip.putArchiveEntry(new ZipArchiveEntry("document_with_stamp.pdf"));
-                    zip.write(pdfWithStamp);
-                    zip.closeArchiveEntry();
-                    
-                    // Файл с ошибкой подписи
-                    zip.putArchiveEntry(new ZipArchiveEntry("signature_error.txt"));
-                    zip.write(("Ошибка создания подписи: " + signatureError.getMessage()).getBytes());
-                    zip.closeArchiveEntry();
-                    zip.finish(); // <--- добавлено
+            } else {
+                // PDF с штампом
+                try (OutputStream entry = ZipPackaging.openEntry(zip, "document_with_stamp.pdf")) {
+                    stampPdf(request, document, entry, listener);
                 }
-                return baos.toByteArray();
+
+                // Файл с ошибкой подписи
+                ZipPackaging.putEntry(zip, "signature_error.txt",
+                        ("Ошибка создания подписи: " + signatureError).getBytes(StandardCharsets.UTF_8));
             }
+            zip.finish();
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при подписании PDF: " + e.getMessage(), e);
         }
     }
     
+    private static String signatureFailed(Exception e) {
+        System.err.println("Предупреждение: Не удалось создать подпись: " + e.getMessage());
+        System.err.println("Возвращаем только PDF с штампом");
+        return e.getMessage();
+    }
+
     /**
-     * Создает отдельную подпись документа
+     * Наносит штамп: документ во временном файле открывается без загрузки потоков в память
      */
-    private byte[] createDocumentSignature(DocumentSignRequest request, byte[] documentBytes) throws Exception {
-        // Декодируем приватный ключ
-        byte[] privateKeyBytes = Base64.getDecoder().decode(request.getPrivateKeyBase64());
-        KeyFactory keyFactory = KeyFactory.getInstance("ECGOST3410-2012", "BC");
-        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
-        PrivateKey privateKey = keyFactory.generatePrivate(keySpec);
-
-        // Создаем подпись документа
-        Signature signature = Signature.getInstance("GOST3411WITHECGOST3410-2012-256", "BC");
-        signature.initSign(privateKey);
-        signature.update(documentBytes);
-        byte[] signatureBytes = signature.sign();
+    private byte[] stampPdf(DocumentSignRequest request, SpooledDocument document) throws IOException {
+        SignRequest signRequest = convertToSignRequest(request);
+        if (document.isInMemory()) {
+            return gostSignService.addStampToPdf(document.getBytes(), signRequest);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, document.getSize() + 64 * 1024));
+        gostSignService.addStampToPdf(document.getFile(), signRequest, baos);
+        return baos.toByteArray();
+    }
 
-        // Возвращаем подпись в Base64
-        return Base64.getEncoder().encode(signatureBytes);
+    /**
+     * Наносит штамп и пишет PDF в поток
+     */
+    private void stampPdf(DocumentSignRequest request, SpooledDocument document, OutputStream output,
+                          ProgressListener listener) throws IOException {
+        SignRequest signRequest = convertToSignRequest(request);
+        if (document.isInMemory()) {
+            gostSignService.addStampToPdf(document.getBytes(), signRequest, output, listener);
+        } else {
+            gostSignService.addStampToPdf(document.getFile(), signRequest, output, listener);
+        }
     }
-    
+
     /**
      * Конвертирует DocumentSignRequest в SignRequest для передачи данных штампа
      */
@@ -354,8 +426,7 @@ public class PdfSignService {
         if (request.getCertificateBase64() != null && !request.getCertificateBase64().isEmpty()) {
             // Декодируем сертификат из Base64
             byte[] certBytes = Base64.getDecoder().decode(request.getCertificateBase64());
-            CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-            return (X509Certificate) certFactory.generateCertificate(new ByteArrayInputStream(certBytes));
+            return CryptoContexts.parseCertificate(certBytes);
         } else {
             // Создаем временный сертификат для тестирования
             return createTemporaryCertificate();
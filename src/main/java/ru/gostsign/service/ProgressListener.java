@@ -0,0 +1,21 @@
+package ru.gostsign.service;
+
+/**
+ * Получатель хода длительной операции над документом (асинхронные задания).
+ * Вызывается в потоке, выполняющем операцию; исключение из обработчика прерывает операцию
+ */
+public interface ProgressListener {
+    // Нанесение штампа: done - обработано страниц, total - всего страниц
+    String STAMPING = "stamping";
+    // Сохранение документа со штампом
+    String SAVING = "saving";
+    // Вычисление подписи
+    String SIGNING = "signing";
+
+    ProgressListener NONE = (stage, done, total) -> { };
+
+    /**
+     * @param total 0, если объем этапа заранее неизвестен
+     */
+    void onProgress(String stage, int done, int total);
+}
@@ -0,0 +1,116 @@
+package ru.gostsign.service;
+
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.model.PdfPreflight;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * Загруженный документ: небольшие документы хранятся в памяти, крупные - во временном файле.
+ * Хэш ГОСТ Р 34.11-2012 (256 бит) вычисляется при приеме, поэтому подпись и проверка
+ * не перечитывают документ повторно.
+ */
+public class SpooledDocument implements AutoCloseable {
+    private final byte[] bytes;
+    private final File file;
+    private final long size;
+    // Для документов из JSON хэш считается лениво - путям штампа он не нужен
+    private byte[] digest;
+    // Первые байты документа для определения формата без чтения файла
+    private final byte[] header;
+    // Результат PdfPreflightScanner: допуск запроса и сервис не разбирают структуру PDF повторно
+    private PdfPreflight preflight;
+
+    SpooledDocument(byte[] bytes, File file, long size, byte[] digest, byte[] header) {
+        this.bytes = bytes;
+        this.file = file;
+        this.size = size;
+        this.digest = digest;
+        this.header = header;
+    }
+
+    /**
+     * Документ, уже полностью находящийся в памяти (JSON-запросы)
+     */
+    public static SpooledDocument of(byte[] documentBytes) {
+        if (documentBytes == null) {
+            throw new IllegalArgumentException("Не передан документ");
+        }
+        return new SpooledDocument(documentBytes, null, documentBytes.length, null, documentBytes);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Хэш ГОСТ Р 34.11-2012 (256 бит) содержимого документа
+     */
+    public byte[] getDigest() {
+        if (digest == null) {
+            digest = GostPrehashSignature.digest(bytes);
+        }
+        return digest.clone();
+    }
+
+    /**
+     * Временный файл с содержимым; null, если документ хранится в памяти
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    public InputStream openStream() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024);
+    }
+
+    /**
+     * Содержимое целиком; для документа во временном файле читает его в память
+     */
+    public byte[] getBytes() {
+        if (file == null) {
+            return bytes;
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при чтении временного файла документа: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * PDF файлы начинаются с "%PDF"
+     */
+    public boolean isPdf() {
+        return header.length >= 4 && header[0] == 0x25 && header[1] == 0x50
+                && header[2] == 0x44 && header[3] == 0x46;
+    }
+
+    PdfPreflight getPreflight() {
+        return preflight;
+    }
+
+    void setPreflight(PdfPreflight preflight) {
+        this.preflight = preflight;
+    }
+
+    @Override
+    public void close() {
+        if (file != null && file.exists() && !file.delete()) {
+            System.err.println("Не удалось удалить временный файл " + file.getAbsolutePath());
+        }
+    }
+}
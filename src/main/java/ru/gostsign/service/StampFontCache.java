@@ -0,0 +1,66 @@
+package ru.gostsign.service;
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Кэш шрифта для текста штампа.
+ * Кириллический TrueType-шрифт поставляется в ресурсах и разбирается один раз на JVM;
+ * каждый PDDocument получает из него только подмножество используемых глифов.
+ */
+@Component
+public class StampFontCache {
+    private static final String FONT_RESOURCE = "fonts/DejaVuSerif.ttf";
+
+    // Разобранный шрифт, общий для всех запросов; null, если шрифт не удалось загрузить
+    private final TrueTypeFont trueTypeFont;
+
+    public StampFontCache() {
+        TrueTypeFont font = null;
+        try (InputStream is = new ClassPathResource(FONT_RESOURCE).getInputStream()) {
+            // Разбор из потока держит шрифт в памяти, закрытие источника для него безопасно
+            font = new TTFParser().parse(is);
+            preloadTables(font);
+            System.out.println("Шрифт штампа загружен в кэш: " + font.getName());
+        } catch (IOException e) {
+            System.err.println("Ошибка загрузки шрифта " + FONT_RESOURCE + ": " + e.getMessage()
+                    + ", будет использован Helvetica (без поддержки кириллицы)");
+        }
+        this.trueTypeFont = font;
+    }
+
+    /**
+     * Создает шрифт для документа с встраиванием подмножества глифов
+     */
+    public PDFont createFont(PDDocument document) throws IOException {
+        if (trueTypeFont == null) {
+            return PDType1Font.HELVETICA;
+        }
+        return PDType0Font.load(document, trueTypeFont, true);
+    }
+
+    /**
+     * Заранее читает таблицы шрифта, чтобы параллельные запросы не разбирали их лениво
+     */
+    private static void preloadTables(TrueTypeFont font) throws IOException {
+        font.getHeader();
+        font.getHorizontalHeader();
+        font.getMaximumProfile();
+        font.getHorizontalMetrics();
+        font.getIndexToLocation();
+        font.getGlyph();
+        font.getNaming();
+        font.getOS2Windows();
+        font.getPostScript();
+        font.getUnicodeCmapLookup();
+    }
+}
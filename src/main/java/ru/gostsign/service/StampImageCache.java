@@ -0,0 +1,110 @@
+package ru.gostsign.service;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Кэш изображения штампа.
+ * PNG декодируется один раз при старте, пиксели хранятся в виде готовых FlateDecode-потоков,
+ * которые встраиваются в каждый PDDocument без повторного декодирования и сжатия.
+ */
+@Component
+public class StampImageCache {
+    private static final String STAMP_RESOURCE = "stamp.png";
+
+    private final int width;
+    private final int height;
+    // RGB-компоненты изображения, сжатые Deflate
+    private final byte[] rgbFlate;
+    // Альфа-канал (SMask), сжатый Deflate; null, если изображение непрозрачное
+    private final byte[] alphaFlate;
+
+    public StampImageCache() {
+        // Читаем через поток, а не getFile(): ресурс может находиться внутри jar
+        try (InputStream is = new ClassPathResource(STAMP_RESOURCE).getInputStream()) {
+            BufferedImage image = ImageIO.read(is);
+            if (image == null) {
+                throw new IOException("Не удалось декодировать " + STAMP_RESOURCE);
+            }
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+
+            byte[] rgb = new byte[width * height * 3];
+            byte[] alpha = new byte[width * height];
+            boolean hasTransparency = false;
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int argb = row[x];
+                    int i = y * width + x;
+                    rgb[i * 3] = (byte) (argb >> 16);
+                    rgb[i * 3 + 1] = (byte) (argb >> 8);
+                    rgb[i * 3 + 2] = (byte) argb;
+                    alpha[i] = (byte) (argb >>> 24);
+                    if ((argb >>> 24) != 0xFF) {
+                        hasTransparency = true;
+                    }
+                }
+            }
+            this.rgbFlate = deflate(rgb);
+            this.alphaFlate = hasTransparency ? deflate(alpha) : null;
+            System.out.println("Изображение штампа загружено в кэш: " + width + "x" + height
+                    + ", сжатый размер " + (rgbFlate.length + (alphaFlate != null ? alphaFlate.length : 0)) + " байт");
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка при загрузке изображения штампа: " + e.getMessage(), e);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Встраивает штамп в документ из заранее сжатых данных
+     */
+    public PDImageXObject createImage(PDDocument document) throws IOException {
+        PDImageXObject image = new PDImageXObject(document, new ByteArrayInputStream(rgbFlate),
+                COSName.FLATE_DECODE, width, height, 8, PDDeviceRGB.INSTANCE);
+        if (alphaFlate != null) {
+            PDImageXObject mask = new PDImageXObject(document, new ByteArrayInputStream(alphaFlate),
+                    COSName.FLATE_DECODE, width, height, 8, PDDeviceGray.INSTANCE);
+            image.getCOSObject().setItem(COSName.SMASK, mask);
+        }
+        return image;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                baos.write(buffer, 0, n);
+            }
+            return baos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
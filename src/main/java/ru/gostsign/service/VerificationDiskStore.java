@@ -0,0 +1,273 @@
+package ru.gostsign.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Дисковый уровень кэша результатов проверки: два поколения файлов-таблиц фиксированного размера.
+ * Запись - 32 байта SHA-256 ключа и байт результата; ячейка выбирается по хэшу, коллизии разрешаются
+ * линейным пробированием. Текущее поколение заполняется до половины ячеек или до max-age, затем становится
+ * предыдущим, а прежнее предыдущее удаляется. На диске не больше двух файлов по maxEntries записей,
+ * результат хранится не дольше двух max-age.
+ */
+class VerificationDiskStore implements AutoCloseable {
+    private static final int KEY_BYTES = 32;
+    private static final int RECORD_BYTES = KEY_BYTES + 1;
+    // Пустая ячейка: файл создается разреженным и заполнен нулями
+    private static final byte EMPTY = 0;
+    private static final int MAX_PROBES = 8;
+    private static final String PREFIX = "results-";
+    private static final String SUFFIX = ".tbl";
+
+    private final Path directory;
+    private final int slots;
+    private final long maxAgeMillis;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Generation current;
+    private Generation previous;
+
+    VerificationDiskStore(Path directory, long maxEntries, Duration maxAge) throws IOException {
+        this.directory = directory;
+        this.slots = (int) Math.min(Integer.MAX_VALUE / RECORD_BYTES, Math.max(1024, maxEntries));
+        this.maxAgeMillis = maxAge.toMillis();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        // Новейшее поколение первым; таблицы другого размера (изменен max-entries) и лишние поколения удаляются
+        files.sort(Comparator.comparingLong(VerificationDiskStore::createdAt).reversed());
+        for (Path file : files) {
+            if (Files.size(file) != (long) slots * RECORD_BYTES || previous != null) {
+                Files.deleteIfExists(file);
+            } else if (current == null) {
+                current = Generation.open(file, slots);
+            } else {
+                previous = Generation.open(file, slots);
+            }
+        }
+        if (current == null) {
+            current = Generation.create(directory, slots);
+        }
+        rotateIfExpired();
+    }
+
+    /**
+     * Результат по SHA-256 ключа кэша; null, если его нет
+     */
+    Boolean get(byte[] keyHash) {
+        lock.readLock().lock();
+        try {
+            Boolean result = current.lookup(keyHash);
+            if (result == null && previous != null) {
+                result = previous.lookup(keyHash);
+            }
+            return result;
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения дискового кэша проверки: " + e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(byte[] keyHash, byte value) {
+        lock.writeLock().lock();
+        try {
+            if (current.count >= slots / 2) {
+                rotate();
+            }
+            current.store(keyHash, value);
+        } catch (IOException e) {
+            System.err.println("Ошибка записи дискового кэша проверки: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Сменяет поколение, если текущее старше max-age (вызывается периодически, в том числе без записей)
+     */
+    void rotateIfExpired() {
+        lock.writeLock().lock();
+        try {
+            if (System.currentTimeMillis() - current.created >= maxAgeMillis) {
+                rotate();
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка смены поколения дискового кэша проверки: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (previous != null) {
+            previous.delete();
+        }
+        previous = current;
+        current = Generation.create(directory, slots);
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            current.close();
+            if (previous != null) {
+                previous.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static long createdAt(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Одно поколение: файл-таблица на slots записей
+     */
+    private static final class Generation {
+        private final Path path;
+        private final FileChannel channel;
+        private final int slots;
+        private final long created;
+        private int count;
+
+        private Generation(Path path, FileChannel channel, int slots, long created) {
+            this.path = path;
+            this.channel = channel;
+            this.slots = slots;
+            this.created = created;
+        }
+
+        static Generation create(Path directory, int slots) throws IOException {
+            long created = System.currentTimeMillis();
+            while (true) {
+                Path path = directory.resolve(PREFIX + created + SUFFIX);
+                try {
+                    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+                    // Последний байт задает размер файла; незаписанные ячейки читаются нулями
+                    channel.write(ByteBuffer.wrap(new byte[]{EMPTY}), (long) slots * RECORD_BYTES - 1);
+                    return new Generation(path, channel, slots, created);
+                } catch (FileAlreadyExistsException e) {
+                    // Поколения сменились в пределах одной миллисекунды
+                    created++;
+                }
+            }
+        }
+
+        /**
+         * Открывает поколение прошлого запуска и подсчитывает занятые ячейки
+         */
+        static Generation open(Path path, int slots) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Generation generation = new Generation(path, channel, slots, createdAt(path));
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+            long position = 0;
+            while (channel.read(buffer.clear(), position) > 0) {
+                buffer.flip();
+                int records = buffer.limit() / RECORD_BYTES;
+                if (records == 0) {
+                    break;
+                }
+                for (int i = KEY_BYTES; i < records * RECORD_BYTES; i += RECORD_BYTES) {
+                    if (buffer.get(i) != EMPTY) {
+                        generation.count++;
+                    }
+                }
+                position += (long) records * RECORD_BYTES;
+            }
+            return generation;
+        }
+
+        Boolean lookup(byte[] keyHash) throws IOException {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            long start = slot(keyHash);
+            for (int i = 0; i < MAX_PROBES; i++) {
+                read(record, (start + i) % slots);
+                byte value = record.get(KEY_BYTES);
+                if (value == EMPTY) {
+                    return null;
+                }
+                if (sameKey(record, keyHash)) {
+                    return value == VerificationResultCache.VALID;
+                }
+            }
+            return null;
+        }
+
+        void store(byte[] keyHash, byte value) throws IOException {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            long start = slot(keyHash);
+            long target = start;
+            for (int i = 0; i < MAX_PROBES; i++) {
+                long slot = (start + i) % slots;
+                read(record, slot);
+                if (record.get(KEY_BYTES) == EMPTY) {
+                    count++;
+                    target = slot;
+                    break;
+                }
+                if (sameKey(record, keyHash)) {
+                    target = slot;
+                    break;
+                }
+            }
+            // Все ячейки цепочки заняты - вытесняется первая
+            record.clear();
+            record.put(keyHash, 0, KEY_BYTES).put(value).flip();
+            channel.write(record, target * RECORD_BYTES);
+        }
+
+        private void read(ByteBuffer record, long slot) throws IOException {
+            record.clear();
+            channel.read(record, slot * RECORD_BYTES);
+            // За концом файла (не должно случаться) - пустая ячейка
+            while (record.hasRemaining()) {
+                record.put(EMPTY);
+            }
+        }
+
+        private long slot(byte[] keyHash) {
+            long hash = ByteBuffer.wrap(keyHash).getLong();
+            return Math.floorMod(hash, slots);
+        }
+
+        private static boolean sameKey(ByteBuffer record, byte[] keyHash) {
+            return Arrays.equals(record.array(), 0, KEY_BYTES, keyHash, 0, KEY_BYTES);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка закрытия дискового кэша проверки: " + e.getMessage());
+            }
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ru.gostsign.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.gostsign.crypto.CryptoContexts;
+import ru.gostsign.crypto.GostBatchVerifier;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.model.CacheMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш результатов математической проверки подписи.
+ * Ключ - (хэш документа, SHA-256 подписи, отпечаток сертификата). Кэшируется только результат
+ * проверки подписи: срок действия сертификата зависит от текущего времени и проверяется каждый раз.
+ * Первый уровень - ограниченный кэш в памяти, второй (необязательный) - таблицы в каталоге на диске
+ * ({@link VerificationDiskStore}), которые переживают перезапуск и ограничены по числу записей и возрасту.
+ * Каталог должен быть доступен на запись только сервису.
+ */
+@Service
+public class VerificationResultCache {
+    static final byte VALID = '1';
+    static final byte INVALID = '0';
+
+    @Value("${gostsign.verify-cache.max-size:100000}")
+    private long maxSize;
+    // Каталог дискового уровня; пусто - только память
+    @Value("${gostsign.verify-cache.dir:}")
+    private String directory;
+    // Записей в одном поколении дискового уровня (на диске не больше двух поколений)
+    @Value("${gostsign.verify-cache.disk.max-entries:1000000}")
+    private long diskMaxEntries;
+    @Value("${gostsign.verify-cache.disk.max-age:7d}")
+    private Duration diskMaxAge;
+
+    private Cache<ByteBuffer, Boolean> results;
+    private VerificationDiskStore diskStore;
+    private ScheduledExecutorService sweeper;
+    private final AtomicLong diskHits = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        results = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        if (directory != null && !directory.isEmpty()) {
+            try {
+                Path diskDirectory = Files.createDirectories(Paths.get(directory));
+                diskStore = new VerificationDiskStore(diskDirectory, diskMaxEntries, diskMaxAge);
+                sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "gost-verify-cache-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                long period = Math.max(1, Math.min(diskMaxAge.toSeconds() / 10, 3600));
+                sweeper.scheduleWithFixedDelay(diskStore::rotateIfExpired, period, period, TimeUnit.SECONDS);
+                System.out.println("Дисковый кэш результатов проверки: " + diskDirectory.toAbsolutePath()
+                        + ", до " + diskMaxEntries + " записей в поколении, хранение до " + diskMaxAge.multipliedBy(2));
+            } catch (IOException e) {
+                System.err.println("Дисковый кэш результатов проверки отключен: " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        if (diskStore != null) {
+            diskStore.close();
+        }
+    }
+
+    /**
+     * Проверяет подпись хэша; повторная проверка той же тройки берется из кэша
+     */
+    public boolean verify(CertificateCache.CachedCertificate certificate, byte[] digest, byte[] signature) {
+        ByteBuffer key = ByteBuffer.wrap(key(digest, signature, certificate.getFingerprint()));
+        return results.get(key, k -> {
+            Boolean stored = readDisk(k.array());
+            if (stored != null) {
+                diskHits.incrementAndGet();
+                return stored;
+            }
+            certificate.recordVerification();
+            boolean isValid = GostPrehashSignature.verify(certificate.getPublicKeyParameters(), digest, signature);
+            writeDisk(k.array(), isValid);
+            return isValid;
+        });
+    }
+
+    /**
+     * Проверяет пакет подписей под одним сертификатом: результаты из кэша берутся как есть,
+     * остальные подписи проверяются одним пакетом и сохраняются в кэш
+     */
+    public boolean[] verifyAll(CertificateCache.CachedCertificate certificate, List<byte[]> digests, List<byte[]> signatures) {
+        boolean[] results = new boolean[digests.size()];
+        List<Integer> pending = new ArrayList<>();
+        List<ByteBuffer> pendingKeys = new ArrayList<>();
+        for (int i = 0; i < digests.size(); i++) {
+            ByteBuffer key = ByteBuffer.wrap(key(digests.get(i), signatures.get(i), certificate.getFingerprint()));
+            Boolean cached = this.results.getIfPresent(key);
+            if (cached == null) {
+                cached = readDisk(key.array());
+                if (cached != null) {
+                    diskHits.incrementAndGet();
+                    this.results.put(key, cached);
+                }
+            }
+            if (cached != null) {
+                results[i] = cached;
+            } else {
+                pending.add(i);
+                pendingKeys.add(key);
+            }
+        }
+        if (pending.isEmpty()) {
+            return results;
+        }
+        List<byte[]> pendingDigests = new ArrayList<>(pending.size());
+        List<byte[]> pendingSignatures = new ArrayList<>(pending.size());
+        for (int i : pending) {
+            pendingDigests.add(digests.get(i));
+            pendingSignatures.add(signatures.get(i));
+        }
+        boolean[] verified = GostBatchVerifier.verify(
+                (ECPublicKeyParameters) certificate.getPublicKeyParameters(), pendingDigests, pendingSignatures);
+        for (int j = 0; j < pending.size(); j++) {
+            results[pending.get(j)] = verified[j];
+            this.results.put(pendingKeys.get(j), verified[j]);
+            writeDisk(pendingKeys.get(j).array(), verified[j]);
+        }
+        return results;
+    }
+
+    public CacheMetrics getMetrics() {
+        CacheStats stats = results.stats();
+        // Попадания в дисковый уровень считаются попаданиями кэша в целом
+        long hits = stats.hitCount() + diskHits.get();
+        long misses = stats.missCount() - diskHits.get();
+        long total = hits + misses;
+        return new CacheMetrics("verification-results", results.estimatedSize(), hits, misses,
+                total == 0 ? 1.0 : (double) hits / total, stats.evictionCount());
+    }
+
+    /**
+     * Ключ: хэш документа (32 байта) || SHA-256 подписи || SHA-256 сертификата
+     */
+    private static byte[] key(byte[] digest, byte[] signature, byte[] certificateFingerprint) {
+        byte[] signatureHash = CryptoContexts.sha256(signature);
+        return ByteBuffer.allocate(digest.length + signatureHash.length + certificateFingerprint.length)
+                .put(digest).put(signatureHash).put(certificateFingerprint).array();
+    }
+
+    private Boolean readDisk(byte[] key) {
+        return diskStore != null ? diskStore.get(CryptoContexts.sha256(key)) : null;
+    }
+
+    private void writeDisk(byte[] key, boolean isValid) {
+        if (diskStore != null) {
+            diskStore.put(CryptoContexts.sha256(key), isValid ? VALID : INVALID);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ru.gostsign.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Запись элементов ZIP архивов результатов с выбором метода по содержимому.
+ * Уже сжатые данные (подписи, PDF с сжатыми потоками, изображения, архивы) сохраняются без сжатия:
+ * deflate тратит на них процессор и почти не уменьшает размер. Сжимаемость оценивается
+ * по сигнатуре формата и энтропии первых {@value #PROBE_SIZE} байт элемента
+ */
+public final class ZipPackaging {
+    // Объем начала элемента, по которому выбирается метод; элемент не длиннее пробы пишется как STORED
+    static final int PROBE_SIZE = 64 * 1024;
+    // Короче этого deflate не окупает заголовки блоков и таблицы Хаффмана
+    private static final int MIN_DEFLATE_SIZE = 256;
+    // Энтропия выше 7.5 бит на байт - сжатые или случайные данные, deflate сэкономит меньше 10-20%
+    private static final double INCOMPRESSIBLE_ENTROPY = 7.5;
+
+    private ZipPackaging() {
+    }
+
+    /**
+     * Добавляет элемент, содержимое которого уже в памяти
+     */
+    public static void putEntry(ZipArchiveOutputStream zip, String name, byte[] data) throws IOException {
+        if (isIncompressible(data, data.length)) {
+            putStored(zip, name, data, data.length);
+        } else {
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            zip.putArchiveEntry(new ZipArchiveEntry(name));
+            zip.write(data);
+            zip.closeArchiveEntry();
+        }
+    }
+
+    /**
+     * Добавляет элемент, копируя содержимое из потока (поток не закрывается)
+     */
+    public static void putEntry(ZipArchiveOutputStream zip, String name, InputStream input) throws IOException {
+        try (OutputStream entry = openEntry(zip, name)) {
+            input.transferTo(entry);
+        }
+    }
+
+    /**
+     * Поток в новый элемент архива; close() завершает элемент, но не архив.
+     * Метод выбирается по первым {@value #PROBE_SIZE} байтам. STORED при записи в поток ответа
+     * требует размер и CRC до данных, поэтому длинный несжимаемый элемент пишется deflate-блоками
+     * без сжатия (уровень 0): 5 байт на блок 64 КБ и копирование вместо поиска совпадений
+     */
+    public static OutputStream openEntry(ZipArchiveOutputStream zip, String name) {
+        return new EntryOutputStream(zip, name);
+    }
+
+    /**
+     * Несжимаемость по сигнатуре формата, а для остальных данных - по энтропии байтов пробы
+     */
+    static boolean isIncompressible(byte[] probe, int length) {
+        if (length < MIN_DEFLATE_SIZE || isCompressedFormat(probe, length)) {
+            return true;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[probe[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2) >= INCOMPRESSIBLE_ENTROPY;
+    }
+
+    /**
+     * PNG, JPEG, GIF, ZIP (в том числе DOCX/XLSX/ODF), gzip, 7z, xz, zstd, bzip2, RAR.
+     * PDF сюда не входит: его сжимаемость зависит от фильтров потоков и оценивается по энтропии
+     */
+    private static boolean isCompressedFormat(byte[] b, int length) {
+        if (length < 4) {
+            return false;
+        }
+        int b0 = b[0] & 0xFF, b1 = b[1] & 0xFF, b2 = b[2] & 0xFF, b3 = b[3] & 0xFF;
+        return (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G')
+                || (b0 == 0xFF && b1 == 0xD8 && b2 == 0xFF)
+                || (b0 == 'G' && b1 == 'I' && b2 == 'F' && b3 == '8')
+                || (b0 == 'P' && b1 == 'K' && b2 == 0x03 && b3 == 0x04)
+                || (b0 == 0x1F && b1 == 0x8B)
+                || (b0 == '7' && b1 == 'z' && b2 == 0xBC && b3 == 0xAF)
+                || (b0 == 0xFD && b1 == '7' && b2 == 'z' && b3 == 'X')
+                || (b0 == 0x28 && b1 == 0xB5 && b2 == 0x2F && b3 == 0xFD)
+                || (b0 == 'B' && b1 == 'Z' && b2 == 'h')
+                || (b0 == 'R' && b1 == 'a' && b2 == 'r' && b3 == '!');
+    }
+
+    private static void putStored(ZipArchiveOutputStream zip, String name, byte[] data, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(length);
+        entry.setCrc(crc.getValue());
+        zip.putArchiveEntry(entry);
+        zip.write(data, 0, length);
+        zip.closeArchiveEntry();
+    }
+
+    /**
+     * Копит пробу, затем открывает элемент выбранным методом и дальше пишет в архив напрямую
+     */
+    private static final class EntryOutputStream extends OutputStream {
+        private final ZipArchiveOutputStream zip;
+        private final String name;
+        private byte[] probe = new byte[PROBE_SIZE];
+        private int probed;
+        private boolean started;
+        private boolean closed;
+
+        EntryOutputStream(ZipArchiveOutputStream zip, String name) {
+            this.zip = zip;
+            this.name = name;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!started) {
+                int take = Math.min(len, PROBE_SIZE - probed);
+                System.arraycopy(b, off, probe, probed, take);
+                probed += take;
+                off += take;
+                len -= take;
+                if (len == 0) {
+                    return;
+                }
+                // Проба заполнена, элемент длиннее нее
+                startDeflated(isIncompressible(probe, probed));
+            }
+            zip.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (started) {
+                zip.closeArchiveEntry();
+            } else if (isIncompressible(probe, probed)) {
+                // Элемент целиком в пробе - размер и CRC известны до записи
+                putStored(zip, name, probe, probed);
+            } else {
+                startDeflated(false);
+                zip.closeArchiveEntry();
+            }
+            probe = null;
+        }
+
+        private void startDeflated(boolean incompressible) throws IOException {
+            zip.setLevel(incompressible ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            zip.putArchiveEntry(new ZipArchiveEntry(name));
+            zip.write(probe, 0, probed);
+            started = true;
+        }
+    }
+}
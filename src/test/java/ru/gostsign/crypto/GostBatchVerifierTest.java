@@ -0,0 +1,212 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.signers.ECGOST3410_2012Signer;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка подписей ECGOST3410_2012Signer по одной, пакетом и после построения таблицы гребенки для Q.
+ * В наборе вперемешку верные подписи, подписи под измененным хэшем и подписи с r, s вне диапазона
+ */
+class GostBatchVerifierTest {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Tc26-Gost-3410-12-256-paramSetA", "Tc26-Gost-3410-12-256-paramSetB"})
+    void singleVerify(String paramSet) {
+        Signer signer = new Signer(paramSet);
+        for (Case item : signer.cases(3)) {
+            assertEquals(item.expected, GostBatchVerifier.verify(signer.publicKey, item.digest, item.signature),
+                    item.name);
+            assertEquals(item.expected, GostPrehashSignature.verify(signer.publicKey, item.digest, item.signature),
+                    item.name);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Tc26-Gost-3410-12-256-paramSetA", "Tc26-Gost-3410-12-256-paramSetB"})
+    void smallBatchWithoutCombTable(String paramSet) {
+        Signer signer = new Signer(paramSet);
+        // Меньше PROMOTE_THRESHOLD подписей с r, s в диапазоне - путь без таблицы для Q, но с общей инверсией
+        List<String> names = List.of("верная подпись", "измененный хэш", "r = 0", "s = n", "пустая подпись");
+        List<Case> cases = signer.cases(1).stream().filter(item -> names.contains(item.name)).toList();
+        assertEquals(names.size(), cases.size());
+        assertBatch(signer.publicKey, cases);
+        assertFalse(hasCombTable(signer.publicKey.getQ()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Tc26-Gost-3410-12-256-paramSetA", "Tc26-Gost-3410-12-256-paramSetB"})
+    void batchVerify(String paramSet) {
+        Signer signer = new Signer(paramSet);
+        assertBatch(signer.publicKey, signer.cases(GostBatchVerifier.PROMOTE_THRESHOLD + 12));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Tc26-Gost-3410-12-256-paramSetA", "Tc26-Gost-3410-12-256-paramSetB"})
+    void verifyAfterPromote(String paramSet) {
+        Signer signer = new Signer(paramSet);
+        GostBatchVerifier.promote(signer.publicKey);
+        assertTrue(hasCombTable(signer.publicKey.getQ()));
+        // Повторный вызов таблицу не перестраивает
+        GostBatchVerifier.promote(signer.publicKey);
+
+        List<Case> cases = signer.cases(5);
+        for (Case item : cases) {
+            assertEquals(item.expected, GostBatchVerifier.verify(signer.publicKey, item.digest, item.signature),
+                    item.name);
+        }
+        assertBatch(signer.publicKey, cases);
+        assertBatch(signer.publicKey, signer.cases(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Tc26-Gost-3410-12-256-paramSetA", "Tc26-Gost-3410-12-256-paramSetB"})
+    void otherKeyIsRejected(String paramSet) {
+        Signer signer = new Signer(paramSet);
+        Signer other = new Signer(paramSet);
+        List<Case> cases = signer.cases(GostBatchVerifier.PROMOTE_THRESHOLD);
+        boolean[] results = GostBatchVerifier.verify(other.publicKey, digests(cases), signatures(cases));
+        for (int i = 0; i < results.length; i++) {
+            assertFalse(results[i], cases.get(i).name);
+        }
+    }
+
+    private static void assertBatch(ECPublicKeyParameters publicKey, List<Case> cases) {
+        boolean[] results = GostBatchVerifier.verify(publicKey, digests(cases), signatures(cases));
+        assertEquals(cases.size(), results.length);
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(cases.get(i).expected, results[i], i + ": " + cases.get(i).name);
+        }
+    }
+
+    private static List<byte[]> digests(List<Case> cases) {
+        return cases.stream().map(item -> item.digest).toList();
+    }
+
+    private static List<byte[]> signatures(List<Case> cases) {
+        return cases.stream().map(item -> item.signature).toList();
+    }
+
+    private static boolean hasCombTable(ECPoint point) {
+        return FixedPointUtil.getFixedPointPreCompInfo(
+                point.getCurve().getPreCompInfo(point, FixedPointUtil.PRECOMP_NAME)) != null;
+    }
+
+    private static byte[] randomDigest() {
+        byte[] digest = new byte[GostPrehashSignature.DIGEST_SIZE];
+        RANDOM.nextBytes(digest);
+        return digest;
+    }
+
+    private record Case(String name, byte[] digest, byte[] signature, boolean expected) {
+    }
+
+    /**
+     * Новая ключевая пара на параметрах кривой приложения и подписи ECGOST3410_2012Signer
+     */
+    private static final class Signer {
+        private final ECDomainParameters domain;
+        private final ECPrivateKeyParameters privateKey;
+        private final ECPublicKeyParameters publicKey;
+
+        Signer(String paramSet) {
+            domain = GostCurves.byName(paramSet);
+            ECKeyPairGenerator generator = new ECKeyPairGenerator();
+            generator.init(new ECKeyGenerationParameters(domain, RANDOM));
+            AsymmetricCipherKeyPair keyPair = generator.generateKeyPair();
+            privateKey = (ECPrivateKeyParameters) keyPair.getPrivate();
+            publicKey = (ECPublicKeyParameters) keyPair.getPublic();
+        }
+
+        BigInteger[] sign(byte[] digest) {
+            ECGOST3410_2012Signer signer = new ECGOST3410_2012Signer();
+            signer.init(true, new ParametersWithRandom(privateKey, RANDOM));
+            return signer.generateSignature(digest);
+        }
+
+        /**
+         * valid верных подписей, затем по одной испорченной каждого вида
+         */
+        List<Case> cases(int valid) {
+            BigInteger n = domain.getN();
+            List<Case> cases = new ArrayList<>();
+            for (int i = 0; i < valid; i++) {
+                byte[] digest = randomDigest();
+                BigInteger[] rs = sign(digest);
+                cases.add(new Case("верная подпись", digest, GostPrehashSignature.encode(rs[0], rs[1]), true));
+                // Эталонная проверка BouncyCastle должна совпадать
+                ECGOST3410_2012Signer verifier = new ECGOST3410_2012Signer();
+                verifier.init(false, publicKey);
+                assertTrue(verifier.verifySignature(digest, rs[0], rs[1]));
+            }
+
+            // По ГОСТ хэш, сводящийся к нулю по модулю q, заменяется на e = 1. ECGOST3410_2012Signer этой
+            // замены не делает, поэтому подпись для нулевого хэша - подпись хэша со значением 1 (little-endian)
+            byte[] zero = new byte[GostPrehashSignature.DIGEST_SIZE];
+            byte[] one = new byte[GostPrehashSignature.DIGEST_SIZE];
+            one[0] = 1;
+            BigInteger[] zeroRs = sign(one);
+            cases.add(new Case("нулевой хэш", zero, GostPrehashSignature.encode(zeroRs[0], zeroRs[1]), true));
+
+            byte[] digest = randomDigest();
+            BigInteger[] rs = sign(digest);
+            BigInteger r = rs[0];
+            BigInteger s = rs[1];
+            byte[] tampered = digest.clone();
+            tampered[RANDOM.nextInt(tampered.length)] ^= 1;
+            cases.add(new Case("измененный хэш", tampered, GostPrehashSignature.encode(r, s), false));
+            cases.add(new Case("r + 1", digest, GostPrehashSignature.encode(r.add(BigInteger.ONE).mod(n), s), false));
+            cases.add(new Case("s + 1", digest, GostPrehashSignature.encode(r, s.add(BigInteger.ONE).mod(n)), false));
+            cases.add(new Case("r = 0", digest, GostPrehashSignature.encode(BigInteger.ZERO, s), false));
+            cases.add(new Case("s = 0", digest, GostPrehashSignature.encode(r, BigInteger.ZERO), false));
+            cases.add(new Case("r = n", digest, GostPrehashSignature.encode(n, s), false));
+            cases.add(new Case("s = n", digest, GostPrehashSignature.encode(r, n), false));
+            // r + n и s + n дают ту же точку по модулю n, но не помещаются в 32 байта
+            cases.add(new Case("r + n длиннее 32 байт", digest, oversized(s, r.add(n), true), false));
+            cases.add(new Case("s + n длиннее 32 байт", digest, oversized(s.add(n), r, false), false));
+            cases.add(new Case("пустая подпись", digest, new byte[0], false));
+            cases.add(new Case("верная после испорченных", digest, GostPrehashSignature.encode(r, s), true));
+            return cases;
+        }
+
+        /**
+         * s || r, где одна из половин занимает 33 байта
+         */
+        private static byte[] oversized(BigInteger s, BigInteger r, boolean longR) {
+            int half = GostPrehashSignature.SIGNATURE_SIZE / 2;
+            byte[] sBytes = unsigned(s, longR ? half : half + 1);
+            byte[] rBytes = unsigned(r, longR ? half + 1 : half);
+            byte[] out = Arrays.copyOf(sBytes, sBytes.length + rBytes.length);
+            System.arraycopy(rBytes, 0, out, sBytes.length, rBytes.length);
+            return out;
+        }
+
+        private static byte[] unsigned(BigInteger value, int length) {
+            byte[] bytes = value.toByteArray();
+            int start = bytes[0] == 0 && bytes.length > 1 ? 1 : 0;
+            byte[] out = new byte[length];
+            System.arraycopy(bytes, start, out, length - (bytes.length - start), bytes.length - start);
+            return out;
+        }
+    }
+}
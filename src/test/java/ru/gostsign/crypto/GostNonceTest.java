@@ -0,0 +1,107 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.bouncycastle.jce.spec.ECNamedCurveGenParameterSpec;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Подпись с заранее вычисленной парой (k, r): совместимость с JCA и однократность k
+ */
+class GostNonceTest {
+    private static final String PARAM_SET_A = "Tc26-Gost-3410-12-256-paramSetA";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @BeforeAll
+    static void registerProviders() {
+        GostProviders.registerBouncyCastle();
+    }
+
+    @Test
+    void nonceSignatureVerifiesThroughJca() throws GeneralSecurityException {
+        KeyPair keyPair = generateKeyPair(PARAM_SET_A);
+        ECKeyParameters privateKey = GostPrehashSignature.privateKeyParameters(keyPair.getPrivate());
+        Set<String> rValues = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] document = ("документ " + i).getBytes(StandardCharsets.UTF_8);
+            byte[] digest = GostPrehashSignature.digest(document);
+            GostNonce nonce = GostNonce.generate(privateKey.getParameters(), RANDOM);
+            byte[] signature = GostPrehashSignature.sign(privateKey, digest, nonce);
+
+            assertTrue(verifyJca(keyPair, document, signature), "JCA, документ " + i);
+            assertTrue(GostPrehashSignature.verify(keyPair.getPublic(), digest, signature), "prehash, документ " + i);
+            // r подписи - r пары; у разных пар разные k
+            assertEquals(nonce.getR(), GostPrehashSignature.decode(signature)[0]);
+            assertTrue(rValues.add(nonce.getR().toString(16)));
+        }
+    }
+
+    @Test
+    void usedNonceCannotBeClaimedAgain() throws GeneralSecurityException {
+        KeyPair keyPair = generateKeyPair(PARAM_SET_A);
+        ECKeyParameters privateKey = GostPrehashSignature.privateKeyParameters(keyPair.getPrivate());
+        byte[] digest = GostPrehashSignature.digest(new byte[]{1, 2, 3});
+        GostNonce nonce = GostNonce.generate(privateKey.getParameters(), RANDOM);
+
+        GostPrehashSignature.sign(privateKey, digest, nonce);
+        assertThrows(IllegalStateException.class, nonce::claim);
+        assertThrows(IllegalStateException.class, () -> GostPrehashSignature.sign(privateKey, digest, nonce));
+    }
+
+    @Test
+    void destroyedNonceCannotBeClaimed() {
+        GostNonce nonce = GostNonce.generate(GostCurves.byName(PARAM_SET_A), RANDOM);
+        nonce.destroy();
+        assertThrows(IllegalStateException.class, nonce::claim);
+    }
+
+    @Test
+    void nonceForOtherCurveIsRejected() throws GeneralSecurityException {
+        KeyPair keyPair = generateKeyPair(PARAM_SET_A);
+        ECKeyParameters privateKey = GostPrehashSignature.privateKeyParameters(keyPair.getPrivate());
+        ECDomainParameters other = GostCurves.byName("Tc26-Gost-3410-12-256-paramSetB");
+        GostNonce nonce = GostNonce.generate(other, RANDOM);
+        byte[] digest = GostPrehashSignature.digest(new byte[0]);
+        assertThrows(IllegalArgumentException.class, () -> GostPrehashSignature.sign(privateKey, digest, nonce));
+        // Отклоненная пара не израсходована
+        assertTrue(nonce.claim().signum() > 0);
+    }
+
+    @Test
+    void zeroDigestIsSignedAsOne() throws GeneralSecurityException {
+        KeyPair keyPair = generateKeyPair(PARAM_SET_A);
+        ECKeyParameters privateKey = GostPrehashSignature.privateKeyParameters(keyPair.getPrivate());
+        byte[] zero = new byte[GostPrehashSignature.DIGEST_SIZE];
+        byte[] signature = GostPrehashSignature.sign(privateKey, zero,
+                GostNonce.generate(privateKey.getParameters(), RANDOM));
+        // По ГОСТ e = 0 заменяется на 1 и при подписи, и при проверке
+        assertTrue(GostPrehashSignature.verify(keyPair.getPublic(), zero, signature));
+    }
+
+    private static KeyPair generateKeyPair(String paramSet) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("ECGOST3410-2012", GostProviders.BOUNCY_CASTLE);
+        generator.initialize(new ECNamedCurveGenParameterSpec(paramSet), RANDOM);
+        return generator.generateKeyPair();
+    }
+
+    private static boolean verifyJca(KeyPair keyPair, byte[] document, byte[] signature) throws GeneralSecurityException {
+        Signature verifier = Signature.getInstance("GOST3411WITHECGOST3410-2012-256", GostProviders.BOUNCY_CASTLE);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(document);
+        return verifier.verify(signature);
+    }
+}
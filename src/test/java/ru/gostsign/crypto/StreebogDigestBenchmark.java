@@ -0,0 +1,84 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.GOST3411_2012_256Digest;
+import org.bouncycastle.crypto.digests.GOST3411_2012_512Digest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность StreebogDigest и дайджестов BouncyCastle (операций в секунду на сообщение size байт).
+ * Запуск: mvn -Pjmh test-compile exec:exec -Djmh.args="StreebogDigestBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreebogDigestBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    private int size;
+
+    private byte[] message;
+    private ByteBuffer directMessage;
+    private final byte[] out = new byte[64];
+    private final StreebogDigest streebog256 = StreebogDigest.streebog256();
+    private final StreebogDigest streebog512 = StreebogDigest.streebog512();
+    private final Digest bouncyCastle256 = new GOST3411_2012_256Digest();
+    private final Digest bouncyCastle512 = new GOST3411_2012_512Digest();
+
+    @Setup
+    public void setUp() {
+        message = new byte[size];
+        new Random(size).nextBytes(message);
+        directMessage = ByteBuffer.allocateDirect(size);
+        directMessage.put(message).flip();
+    }
+
+    @Benchmark
+    public byte[] streebog256() {
+        return digest(streebog256);
+    }
+
+    @Benchmark
+    public byte[] streebog256DirectBuffer() {
+        streebog256.update(directMessage.duplicate());
+        streebog256.doFinal(out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] bouncyCastle256() {
+        return digest(bouncyCastle256);
+    }
+
+    @Benchmark
+    public byte[] streebog512() {
+        return digest(streebog512);
+    }
+
+    @Benchmark
+    public byte[] bouncyCastle512() {
+        return digest(bouncyCastle512);
+    }
+
+    private byte[] digest(Digest digest) {
+        digest.update(message, 0, message.length);
+        digest.doFinal(out, 0);
+        return out;
+    }
+}
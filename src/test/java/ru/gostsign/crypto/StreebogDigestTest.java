@@ -0,0 +1,163 @@
+package ru.gostsign.crypto;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.GOST3411_2012_256Digest;
+import org.bouncycastle.crypto.digests.GOST3411_2012_512Digest;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Контрольные примеры ГОСТ Р 34.11-2012 (приложение А, RFC 6986) и сверка с BouncyCastle
+ * на сообщениях случайной длины при разных способах подачи данных
+ */
+class StreebogDigestTest {
+    // Пример 1: 63 байта "0123...012"
+    private static final byte[] M1 = "012345678901234567890123456789012345678901234567890123456789012"
+            .getBytes(StandardCharsets.US_ASCII);
+    // Пример 2: 72 байта в кодировке windows-1251
+    private static final byte[] M2 = "Се ветри, Стрибожи внуци, веютъ с моря стрелами на храбрыя плъкы Игоревы"
+            .getBytes(Charset.forName("windows-1251"));
+
+    // Хэши в порядке байтов на выходе (в стандарте записаны в обратном порядке)
+    private static final String M1_256 = "9d151eefd8590b89daa6ba6cb74af9275dd051026bb149a452fd84e5e57b5500";
+    private static final String M2_256 = "9dd2fe4e90409e5da87f53976d7405b0c0cac628fc669a741d50063c557e8f50";
+    private static final String M1_512 = "1b54d01a4af5b9d5cc3d86d68d285462b19abc2475222f35c085122be4ba1ffa"
+            + "00ad30f8767b3a82384c6574f024c311e2a481332b08ef7f41797891c1646f48";
+    private static final String M2_512 = "1e88e62226bfca6f9994f1f2d51569e0daf8475a3b0fe61a5300eee46d961376"
+            + "035fe83549ada2b8620fcd7c496ce5b33f0cb9dddc2b6460143b03dabac9fb28";
+
+    @Test
+    void standardVectors256() {
+        assertEquals(72, M2.length);
+        assertEquals(M1_256, Hex.toHexString(digest(StreebogDigest.streebog256(), M1)));
+        assertEquals(M2_256, Hex.toHexString(digest(StreebogDigest.streebog256(), M2)));
+    }
+
+    @Test
+    void standardVectors512() {
+        assertEquals(M1_512, Hex.toHexString(digest(StreebogDigest.streebog512(), M1)));
+        assertEquals(M2_512, Hex.toHexString(digest(StreebogDigest.streebog512(), M2)));
+    }
+
+    @Test
+    void standardVectorsMatchBouncyCastle() {
+        assertEquals(M1_256, Hex.toHexString(digest(new GOST3411_2012_256Digest(), M1)));
+        assertEquals(M2_256, Hex.toHexString(digest(new GOST3411_2012_256Digest(), M2)));
+        assertEquals(M1_512, Hex.toHexString(digest(new GOST3411_2012_512Digest(), M1)));
+        assertEquals(M2_512, Hex.toHexString(digest(new GOST3411_2012_512Digest(), M2)));
+    }
+
+    @Test
+    void randomLengths256() {
+        compareWithBouncyCastle(StreebogDigest.streebog256(), new GOST3411_2012_256Digest(), 256);
+    }
+
+    @Test
+    void randomLengths512() {
+        compareWithBouncyCastle(StreebogDigest.streebog512(), new GOST3411_2012_512Digest(), 512);
+    }
+
+    @Test
+    void directBuffersInBothByteOrders() {
+        Random random = new Random(7);
+        GOST3411_2012_256Digest reference = new GOST3411_2012_256Digest();
+        StreebogDigest digest = StreebogDigest.streebog256();
+        for (int length : new int[]{0, 1, 63, 64, 65, 127, 128, 129, 1000, 4096 + 17}) {
+            byte[] message = new byte[length];
+            random.nextBytes(message);
+            byte[] expected = digest(reference, message);
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                // Смещение 3 - блоки читаются с невыровненного адреса
+                ByteBuffer direct = ByteBuffer.allocateDirect(length + 3).order(order);
+                direct.position(3);
+                direct.put(message).flip().position(3);
+                digest.update(direct);
+                assertEquals(direct.limit(), direct.position());
+                assertArrayEquals(expected, doFinal(digest), "длина " + length + ", " + order);
+            }
+        }
+    }
+
+    @Test
+    void mappedFile(@TempDir Path directory) throws IOException {
+        byte[] message = new byte[300_000 + 11];
+        new Random(11).nextBytes(message);
+        Path file = Files.write(directory.resolve("document.bin"), message);
+        StreebogDigest digest = StreebogDigest.streebog256();
+        try (FileChannel channel = FileChannel.open(file)) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        assertArrayEquals(digest(new GOST3411_2012_256Digest(), message), doFinal(digest));
+    }
+
+    @Test
+    void resetDiscardsInput() {
+        StreebogDigest digest = StreebogDigest.streebog256();
+        digest.update(M2, 0, M2.length);
+        digest.reset();
+        assertEquals(M1_256, Hex.toHexString(digest(digest, M1)));
+    }
+
+    @Test
+    void rejectsUnsupportedSize() {
+        assertThrows(IllegalArgumentException.class, () -> new StreebogDigest(48));
+    }
+
+    /**
+     * Сообщения длиной 0..1200 байт подаются вперемешку массивами, отдельными байтами и ByteBuffer;
+     * один экземпляр используется повторно после doFinal
+     */
+    private static void compareWithBouncyCastle(StreebogDigest digest, Digest reference, int rounds) {
+        Random random = new Random(rounds);
+        for (int round = 0; round < rounds; round++) {
+            byte[] message = new byte[random.nextInt(1201)];
+            random.nextBytes(message);
+            int offset = 0;
+            while (offset < message.length) {
+                int chunk = Math.min(message.length - offset, 1 + random.nextInt(200));
+                switch (random.nextInt(4)) {
+                    case 0 -> digest.update(message, offset, chunk);
+                    case 1 -> {
+                        for (int i = 0; i < chunk; i++) {
+                            digest.update(message[offset + i]);
+                        }
+                    }
+                    case 2 -> digest.update(ByteBuffer.wrap(message, offset, chunk));
+                    default -> {
+                        ByteBuffer direct = ByteBuffer.allocateDirect(chunk);
+                        direct.put(message, offset, chunk).flip();
+                        digest.update(direct);
+                    }
+                }
+                offset += chunk;
+            }
+            assertArrayEquals(digest(reference, message), doFinal(digest), "длина " + message.length);
+        }
+    }
+
+    private static byte[] digest(Digest digest, byte[] message) {
+        digest.update(message, 0, message.length);
+        return doFinal(digest);
+    }
+
+    private static byte[] doFinal(Digest digest) {
+        byte[] out = new byte[digest.getDigestSize()];
+        digest.doFinal(out, 0);
+        return out;
+    }
+}
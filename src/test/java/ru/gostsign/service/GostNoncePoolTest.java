@@ -0,0 +1,126 @@
+package ru.gostsign.service;
+
+import org.bouncycastle.crypto.params.ECKeyParameters;
+import org.bouncycastle.jce.spec.ECNamedCurveGenParameterSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.gostsign.crypto.GostPrehashSignature;
+import ru.gostsign.crypto.GostProviders;
+import ru.gostsign.model.KeyPoolMetrics;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Подписи пула (k, r) проверяются JCA-подписью GOST3411WITHECGOST3410-2012-256 и GostPrehashSignature;
+ * ни одно k не используется дважды, в том числе после опустошения пула
+ */
+class GostNoncePoolTest {
+    private static final String PARAM_SET = GostKeyPairPool.DEFAULT_PARAM_SET;
+    private static final int SIZE = 8;
+
+    private final GostNoncePool pool = new GostNoncePool();
+
+    @BeforeAll
+    static void registerProviders() {
+        GostProviders.registerBouncyCastle();
+    }
+
+    @AfterEach
+    void stopPool() {
+        pool.stop();
+    }
+
+    @Test
+    void poolSignaturesVerify() throws Exception {
+        configure(SIZE);
+        pool.start();
+        awaitFull();
+
+        KeyPair keyPair = generateKeyPair();
+        ECKeyParameters privateKey = GostPrehashSignature.privateKeyParameters(keyPair.getPrivate());
+        Set<String> rValues = new HashSet<>();
+        // Сначала пары из заполненного пула, затем подписи при пустом пуле (обычная подпись)
+        int count = SIZE * 3;
+        for (int i = 0; i < count; i++) {
+            byte[] document = ("документ " + i).getBytes(StandardCharsets.UTF_8);
+            byte[] digest = GostPrehashSignature.digest(document);
+            byte[] signature = pool.sign(privateKey, digest);
+
+            assertTrue(verifyJca(keyPair, document, signature), "JCA, документ " + i);
+            assertTrue(GostPrehashSignature.verify(keyPair.getPublic(), digest, signature), "prehash, документ " + i);
+            // Одинаковое r означало бы повторное k
+            assertTrue(rValues.add(GostPrehashSignature.decode(signature)[0].toString(16)), "повтор r, документ " + i);
+        }
+
+        KeyPoolMetrics metrics = pool.getMetrics().get(0);
+        assertTrue(metrics.getHits() >= SIZE, "подписей с парой из пула: " + metrics.getHits());
+        assertEquals(count, metrics.getHits() + metrics.getMisses());
+    }
+
+    @Test
+    void disabledPoolSignsInline() throws Exception {
+        configure(0);
+        pool.start();
+
+        KeyPair keyPair = generateKeyPair();
+        ECKeyParameters privateKey = GostPrehashSignature.privateKeyParameters(keyPair.getPrivate());
+        byte[] document = "документ".getBytes(StandardCharsets.UTF_8);
+        byte[] signature = pool.sign(privateKey, GostPrehashSignature.digest(document));
+
+        assertTrue(verifyJca(keyPair, document, signature));
+        assertEquals(0, pool.getMetrics().get(0).getHits());
+    }
+
+    @Test
+    void stopDrainsPool() throws Exception {
+        configure(SIZE);
+        pool.start();
+        awaitFull();
+        pool.stop();
+        assertEquals(0, pool.getMetrics().get(0).getDepth());
+    }
+
+    private void configure(int size) throws ReflectiveOperationException {
+        set("size", size);
+        set("paramSets", List.of(PARAM_SET));
+    }
+
+    private void set(String name, Object value) throws ReflectiveOperationException {
+        Field field = GostNoncePool.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(pool, value);
+    }
+
+    private void awaitFull() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (pool.getMetrics().get(0).getDepth() < SIZE) {
+            assertTrue(System.currentTimeMillis() < deadline, "пул не заполнился за 30 с");
+            Thread.sleep(10);
+        }
+    }
+
+    private static KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("ECGOST3410-2012", GostProviders.BOUNCY_CASTLE);
+        generator.initialize(new ECNamedCurveGenParameterSpec(PARAM_SET));
+        return generator.generateKeyPair();
+    }
+
+    private static boolean verifyJca(KeyPair keyPair, byte[] document, byte[] signature) throws GeneralSecurityException {
+        Signature verifier = Signature.getInstance("GOST3411WITHECGOST3410-2012-256", GostProviders.BOUNCY_CASTLE);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(document);
+        return verifier.verify(signature);
+    }
+}
@@ -0,0 +1,413 @@
+package ru.gostsign.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import ru.gostsign.model.PdfPreflight;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Разбор структуры PDF сверяется с тем, что открывает PDFBox: сохраненные PDFBox документы,
+ * инкрементальные обновления, потоки ссылок с предиктором, гибридные файлы, шифрование,
+ * обрезанные файлы и мусор после %%EOF
+ */
+class PdfPreflightScannerTest {
+    // Каталог, дерево страниц и две страницы; объекты 1-4 во всех собранных вручную файлах
+    private static final String[] OBJECTS = {
+            "<< /Type /Catalog /Pages 2 0 R >>",
+            "<< /Type /Pages /Kids [3 0 R 4 0 R] /Count 2 >>",
+            "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 200 200] >>",
+            "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 300 300] >>"
+    };
+
+    private final PdfPreflightScanner scanner = new PdfPreflightScanner();
+
+    @Test
+    void pdfboxDocument() throws IOException {
+        byte[] pdf = pdfboxDocument(3);
+        PdfPreflight preflight = scan(pdf);
+        assertParsed(preflight, 3);
+        assertEquals(0, preflight.getIncrementalUpdates());
+        assertFalse(preflight.isXrefStream());
+        assertFalse(preflight.isEncrypted());
+        assertEquals(0, preflight.getSignatureCount());
+        assertEquals(pdf.length, preflight.getSize());
+        assertEquals(objectCount(pdf), preflight.getObjectCount());
+    }
+
+    @Test
+    void temporaryFile(@TempDir Path directory) throws IOException {
+        byte[] pdf = pdfboxDocument(5);
+        File file = directory.resolve("document.pdf").toFile();
+        Files.write(file.toPath(), pdf);
+        SpooledDocument document = new SpooledDocument(null, file, pdf.length, null,
+                Arrays.copyOf(pdf, 16));
+        assertParsed(scanner.check(document), 5);
+    }
+
+    @Test
+    void incrementalUpdate() throws IOException {
+        byte[] original = pdfboxDocument(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PDDocument document = PDDocument.load(original)) {
+            document.getDocumentInformation().setTitle("обновление");
+            document.getDocumentInformation().getCOSObject().setNeedToBeUpdated(true);
+            document.saveIncremental(out);
+        }
+        byte[] updated = out.toByteArray();
+        assertTrue(updated.length > original.length);
+
+        PdfPreflight preflight = scan(updated);
+        assertParsed(preflight, 2);
+        assertEquals(1, preflight.getIncrementalUpdates());
+        assertEquals(objectCount(updated), preflight.getObjectCount());
+    }
+
+    @Test
+    void signatureInIncrementalUpdate() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PDDocument document = PDDocument.load(pdfboxDocument(1))) {
+            PDSignature signature = new PDSignature();
+            signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+            signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+            signature.setSignDate(Calendar.getInstance());
+            document.addSignature(signature, content -> {
+                content.readAllBytes();
+                return new byte[]{1, 2, 3};
+            });
+            document.saveIncremental(out);
+        }
+        PdfPreflight preflight = scan(out.toByteArray());
+        assertParsed(preflight, 1);
+        assertEquals(1, preflight.getIncrementalUpdates());
+        assertEquals(1, preflight.getSignatureCount());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 12})
+    void xrefStream(int predictor) throws IOException {
+        byte[] pdf = xrefStreamDocument(predictor);
+        PdfPreflight preflight = scan(pdf);
+        assertParsed(preflight, 2);
+        assertTrue(preflight.isXrefStream());
+        // Объекты 1-4 в потоке объектов 5, поток ссылок 6
+        assertEquals(6, preflight.getObjectCount());
+        assertEquals(2, pdfboxPageCount(pdf));
+    }
+
+    @Test
+    void hybridReferences() throws IOException {
+        byte[] pdf = hybridDocument();
+        PdfPreflight preflight = scan(pdf);
+        // Свободные записи таблицы для объектов 1-4 не заслоняют записи потока /XRefStm
+        assertParsed(preflight, 2);
+        assertEquals(6, preflight.getObjectCount());
+        assertEquals(2, pdfboxPageCount(pdf));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {40, 128, 256})
+    void encryptedWithEmptyUserPassword(int keyLength) throws IOException {
+        byte[] pdf = encryptedDocument("", keyLength);
+        PdfPreflight preflight = scanner.check(SpooledDocument.of(pdf));
+        assertParsed(preflight, 2);
+        assertTrue(preflight.isEncrypted());
+        assertFalse(preflight.isPasswordRequired());
+        try (PDDocument document = PDDocument.load(pdf)) {
+            assertEquals(2, document.getNumberOfPages());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {40, 128, 256})
+    void encryptedWithUserPassword(int keyLength) throws IOException {
+        SpooledDocument document = SpooledDocument.of(encryptedDocument("secret", keyLength));
+        PdfPreflight preflight = scanner.scan(document);
+        assertTrue(preflight.isEncrypted());
+        assertTrue(preflight.isPasswordRequired());
+        assertRejected(document);
+    }
+
+    @Test
+    void truncatedFile() throws IOException {
+        byte[] pdf = pdfboxDocument(3);
+        SpooledDocument half = SpooledDocument.of(Arrays.copyOf(pdf, pdf.length / 2));
+        assertEquals(Boolean.FALSE, scanner.scan(half).getComplete());
+        assertRejected(half);
+
+        // startxref на месте, но %%EOF не дошел
+        int eof = new String(pdf, StandardCharsets.ISO_8859_1).lastIndexOf("%%EOF");
+        SpooledDocument withoutEof = SpooledDocument.of(Arrays.copyOf(pdf, eof));
+        assertEquals(Boolean.FALSE, scanner.scan(withoutEof).getComplete());
+        assertRejected(withoutEof);
+
+        SpooledDocument withoutHeader = SpooledDocument.of(Arrays.copyOfRange(pdf, 8, pdf.length));
+        assertRejected(withoutHeader);
+    }
+
+    @Test
+    void trailingGarbage() throws IOException {
+        byte[] pdf = pdfboxDocument(2);
+        assertParsed(scan(withGarbage(pdf, 10 * 1024)), 2);
+
+        // startxref дальше окна поиска: полнота неизвестна, документ не отклоняется
+        SpooledDocument document = SpooledDocument.of(withGarbage(pdf, 2 * 1024 * 1024));
+        PdfPreflight preflight = scanner.check(document);
+        assertNull(preflight.getComplete());
+        assertNotNull(preflight.getProblem());
+    }
+
+    @Test
+    void objectPastEndOfFile() throws IOException {
+        PdfBuilder pdf = new PdfBuilder();
+        for (int i = 0; i < OBJECTS.length; i++) {
+            pdf.object(i + 1, OBJECTS[i]);
+        }
+        // Запись для объекта 5 указывает за конец файла; PDFBox восстанавливает такие таблицы
+        pdf.offsets.add(10_000_000L);
+        long xref = pdf.xrefTable();
+        pdf.write("trailer\n<< /Size 6 /Root 1 0 R >>\n");
+        byte[] bytes = pdf.finish(xref);
+
+        PdfPreflight preflight = scanner.check(SpooledDocument.of(bytes));
+        assertEquals(Boolean.TRUE, preflight.getComplete());
+        assertEquals("объект за концом файла", preflight.getProblem());
+        assertEquals(2, preflight.getPageCount());
+        assertEquals(2, pdfboxPageCount(bytes));
+    }
+
+    private PdfPreflight scan(byte[] pdf) {
+        return scanner.scan(SpooledDocument.of(pdf));
+    }
+
+    private static void assertParsed(PdfPreflight preflight, int pages) {
+        assertNull(preflight.getProblem());
+        assertEquals(Boolean.TRUE, preflight.getComplete());
+        assertEquals(pages, preflight.getPageCount());
+        assertTrue(preflight.getObjectCount() > pages);
+    }
+
+    private void assertRejected(SpooledDocument document) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> scanner.check(document));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+    }
+
+    private static byte[] pdfboxDocument(int pages) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < pages; i++) {
+                document.addPage(new PDPage());
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] encryptedDocument(String userPassword, int keyLength) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            document.addPage(new PDPage());
+            StandardProtectionPolicy policy = new StandardProtectionPolicy("owner", userPassword, new AccessPermission());
+            policy.setEncryptionKeyLength(keyLength);
+            document.protect(policy);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Используемые объекты по данным PDFBox
+     */
+    private static int objectCount(byte[] pdf) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            return (int) document.getDocument().getXrefTable().values().stream().filter(offset -> offset != 0).count();
+        }
+    }
+
+    private static int pdfboxPageCount(byte[] pdf) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    private static byte[] withGarbage(byte[] pdf, int size) {
+        byte[] out = Arrays.copyOf(pdf, pdf.length + size);
+        Arrays.fill(out, pdf.length, out.length, (byte) 'x');
+        return out;
+    }
+
+    /**
+     * PDF 1.5: объекты 1-4 в потоке объектов 5, поток ссылок 6 (FlateDecode и при predictor 12 - PNG Up)
+     */
+    private static byte[] xrefStreamDocument(int predictor) throws IOException {
+        PdfBuilder pdf = new PdfBuilder();
+        pdf.objectStream(5, OBJECTS);
+        long xref = pdf.offset();
+        List<long[]> rows = new ArrayList<>();
+        rows.add(new long[]{0, 0, 65535});
+        for (int i = 0; i < OBJECTS.length; i++) {
+            rows.add(new long[]{2, 5, i});
+        }
+        rows.add(new long[]{1, pdf.offsets.get(4), 0});
+        rows.add(new long[]{1, xref, 0});
+        pdf.xrefStream(6, rows, "/Size 7 /Root 1 0 R", predictor);
+        return pdf.finish(xref);
+    }
+
+    /**
+     * Гибридный файл: в таблице объекты 1-4 свободны, их места в потоке объектов - в потоке /XRefStm
+     */
+    private static byte[] hybridDocument() throws IOException {
+        PdfBuilder pdf = new PdfBuilder();
+        pdf.objectStream(5, OBJECTS);
+        long xrefStm = pdf.offset();
+        List<long[]> rows = new ArrayList<>();
+        for (int i = 0; i < OBJECTS.length; i++) {
+            rows.add(new long[]{2, 5, i});
+        }
+        pdf.xrefStream(6, rows, "/Size 7 /Index [1 4]", 12);
+        long xref = pdf.offset();
+        pdf.write("xref\n0 7\n0000000000 65535 f \n");
+        for (int i = 0; i < OBJECTS.length; i++) {
+            pdf.write("0000000000 00001 f \n");
+        }
+        pdf.write(String.format("%010d 00000 n \n%010d 00000 n \n", pdf.offsets.get(4), xrefStm));
+        pdf.write("trailer\n<< /Size 7 /Root 1 0 R /XRefStm " + xrefStm + " >>\n");
+        return pdf.finish(xref);
+    }
+
+    /**
+     * Запись PDF по объектам; offsets - смещения объектов 1, 2, ...
+     */
+    private static final class PdfBuilder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final List<Long> offsets = new ArrayList<>();
+
+        PdfBuilder() {
+            write("%PDF-1.7\n%âãÏÓ\n");
+        }
+
+        long offset() {
+            return out.size();
+        }
+
+        void write(String text) {
+            out.writeBytes(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        void object(int number, String body) {
+            mark(number);
+            write(number + " 0 obj\n" + body + "\nendobj\n");
+        }
+
+        void stream(int number, String dictionary, byte[] data) {
+            mark(number);
+            write(number + " 0 obj\n<< " + dictionary + " /Length " + data.length + " >>\nstream\n");
+            out.writeBytes(data);
+            write("\nendstream\nendobj\n");
+        }
+
+        void objectStream(int number, String[] objects) throws IOException {
+            StringBuilder header = new StringBuilder();
+            StringBuilder body = new StringBuilder();
+            for (int i = 0; i < objects.length; i++) {
+                header.append(i + 1).append(' ').append(body.length()).append(' ');
+                body.append(objects[i]).append('\n');
+            }
+            byte[] data = (header + body.toString()).getBytes(StandardCharsets.ISO_8859_1);
+            stream(number, "/Type /ObjStm /N " + objects.length + " /First " + header.length()
+                    + " /Filter /FlateDecode", deflate(data));
+        }
+
+        /**
+         * Поток ссылок /W [1 4 2]; строки - тип, второе и третье поле
+         */
+        void xrefStream(int number, List<long[]> rows, String entries, int predictor) throws IOException {
+            int[] widths = {1, 4, 2};
+            int rowSize = 7;
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            byte[] previous = new byte[rowSize];
+            for (long[] row : rows) {
+                byte[] bytes = new byte[rowSize];
+                for (int field = 0, at = 0; field < widths.length; at += widths[field++]) {
+                    for (int i = 0; i < widths[field]; i++) {
+                        bytes[at + i] = (byte) (row[field] >>> (8 * (widths[field] - 1 - i)));
+                    }
+                }
+                if (predictor >= 10) {
+                    // PNG Up: разность с предыдущей строкой
+                    table.write(2);
+                    for (int i = 0; i < rowSize; i++) {
+                        table.write(bytes[i] - previous[i]);
+                    }
+                    previous = bytes;
+                } else {
+                    table.writeBytes(bytes);
+                }
+            }
+            String parameters = predictor >= 10
+                    ? " /DecodeParms << /Predictor " + predictor + " /Columns " + rowSize + " >>" : "";
+            stream(number, "/Type /XRef " + entries + " /W [1 4 2] /Filter /FlateDecode" + parameters,
+                    deflate(table.toByteArray()));
+        }
+
+        /**
+         * Классическая таблица по offsets; возвращает ее смещение
+         */
+        long xrefTable() {
+            long xref = offset();
+            write("xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+            for (long offset : offsets) {
+                write(String.format("%010d 00000 n \n", offset));
+            }
+            return xref;
+        }
+
+        byte[] finish(long xref) {
+            write("startxref\n" + xref + "\n%%EOF\n");
+            return out.toByteArray();
+        }
+
+        private void mark(int number) {
+            while (offsets.size() < number) {
+                offsets.add(0L);
+            }
+            offsets.set(number - 1, offset());
+        }
+
+        private static byte[] deflate(byte[] data) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+                deflater.write(data);
+            }
+            return out.toByteArray();
+        }
+    }
+}